@@ -0,0 +1,79 @@
+package com.opsgenie.integration.jenkins;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full delivery of a serialized payload through the shared HTTP client to an in-process stub,
+ * from several threads at once like concurrent builds would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class DeliveryBenchmark {
+
+    @Param({"1024", "65536"})
+    public int payloadSize;
+
+    @Param({"false", "true"})
+    public boolean compress;
+
+    private OpsGenieStub stub;
+    private OpsGenieWebhookSender sender;
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        PayloadCompression.configure(compress, PayloadCompression.DEFAULT_THRESHOLD);
+        stub = new OpsGenieStub();
+        sender = new OpsGenieWebhookSender(stub.getUrl(), "benchmark-key", new PrintStream(new NullOutputStream()));
+
+        Map<String, Object> fields = new HashMap<>();
+        StringBuilder failedTests = new StringBuilder();
+        while (failedTests.length() < payloadSize) {
+            failedTests.append("<strong>com.example.SomeTest.testCase</strong>\nexpected:<1> but was:<2>\n\n");
+        }
+        fields.put("failedTests", failedTests.toString());
+        fields.put("status", "FAILURE");
+        payload = OpsGenieJson.writePayload(fields);
+        stub.expectPayload(payload);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stub.close();
+        PayloadCompression.configure(false, PayloadCompression.DEFAULT_THRESHOLD);
+        if (stub.getInvalid() > 0 || stub.getMismatches() > 0) {
+            throw new IllegalStateException(stub.getInvalid() + " invalid and " + stub.getMismatches()
+                    + " mismatching payloads received");
+        }
+    }
+
+    @Benchmark
+    public OpsGenieWebhookSender.Outcome send() {
+        return sender.send(payload, OpsGenieRetryPolicy.NONE);
+    }
+}
@@ -0,0 +1,246 @@
+package com.opsgenie.integration.jenkins;
+
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Drives {@link OpsGenieNotificationService} from many concurrent simulated builds against an
+ * {@link OpsGenieStub}, entirely offline, and reports throughput, latency, thread usage and heap
+ * growth.
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:java@load-test -Dexec.args="--builds 200 --alerts 50"
+ * </pre>
+ * Options:
+ * <ul>
+ * <li>{@code --builds N} concurrent builds, 100 by default</li>
+ * <li>{@code --alerts N} alerts sent by each build, 20 by default</li>
+ * <li>{@code --latency MS} and {@code --jitter MS} added to every stub response</li>
+ * <li>{@code --errors RATE} fraction of requests answered with 503</li>
+ * <li>{@code --rate-limits RATE} fraction of requests answered with 429</li>
+ * <li>{@code --async} deliver through the dispatcher instead of on the build thread</li>
+ * <li>{@code --gzip BYTES} compress payloads of at least the given size</li>
+ * <li>{@code --secondary-latency MS} and {@code --secondary-errors RATE} start a second stub
+ * configured as alternate endpoint, to watch alerts fail over to it</li>
+ * </ul>
+ */
+public class LoadTest {
+    private int builds = 100;
+    private int alertsPerBuild = 20;
+    private long latency;
+    private long jitter;
+    private double errorRate;
+    private double rateLimitRate;
+    private boolean async;
+    private int gzipThreshold;
+    private boolean secondary;
+    private long secondaryLatency;
+    private double secondaryErrorRate;
+
+    public static void main(String[] args) throws Exception {
+        LoadTest loadTest = new LoadTest();
+        loadTest.parse(args);
+        loadTest.run();
+        System.exit(0);
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            switch (option) {
+                case "--builds":
+                    builds = Integer.parseInt(args[++i]);
+                    break;
+                case "--alerts":
+                    alertsPerBuild = Integer.parseInt(args[++i]);
+                    break;
+                case "--latency":
+                    latency = Long.parseLong(args[++i]);
+                    break;
+                case "--jitter":
+                    jitter = Long.parseLong(args[++i]);
+                    break;
+                case "--errors":
+                    errorRate = Double.parseDouble(args[++i]);
+                    break;
+                case "--rate-limits":
+                    rateLimitRate = Double.parseDouble(args[++i]);
+                    break;
+                case "--async":
+                    async = true;
+                    break;
+                case "--gzip":
+                    gzipThreshold = Integer.parseInt(args[++i]);
+                    break;
+                case "--secondary-latency":
+                    secondary = true;
+                    secondaryLatency = Long.parseLong(args[++i]);
+                    break;
+                case "--secondary-errors":
+                    secondary = true;
+                    secondaryErrorRate = Double.parseDouble(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+    }
+
+    private void run() throws Exception {
+        PayloadCompression.configure(gzipThreshold > 0, gzipThreshold);
+        final OpsGenieStub stub = new OpsGenieStub()
+                .setLatency(latency, jitter)
+                .setErrorRate(errorRate)
+                .setRateLimitRate(rateLimitRate, 1);
+        final OpsGenieStub alternate = secondary
+                ? new OpsGenieStub().setLatency(secondaryLatency, 0).setErrorRate(secondaryErrorRate)
+                : null;
+        OpsGenieEndpoints.configure(stub.getUrl(), alternate != null ? alternate.getUrl() : null);
+        try {
+            // Warms up the client, the JIT and class loading so they do not count as growth
+            runBuilds(stub, Math.min(builds, 10), 5);
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            System.gc();
+            long heapBefore = memory.getHeapMemoryUsage().getUsed();
+            int threadsBefore = threads.getThreadCount();
+            threads.resetPeakThreadCount();
+            long requestsBefore = stub.getRequests();
+            long bytesBefore = stub.getReceivedBytes();
+            long alternateRequestsBefore = alternate != null ? alternate.getRequests() : 0;
+
+            long start = System.nanoTime();
+            Results results = runBuilds(stub, builds, alertsPerBuild);
+            long elapsed = System.nanoTime() - start;
+
+            System.gc();
+            long heapAfter = memory.getHeapMemoryUsage().getUsed();
+            double seconds = elapsed / 1e9;
+            int alerts = builds * alertsPerBuild;
+
+            System.out.println(String.format(Locale.ENGLISH,
+                    "%d builds x %d alerts, %s delivery, stub latency %d+%d ms, errors %.2f, rate limits %.2f",
+                    builds, alertsPerBuild, async ? "asynchronous" : "synchronous", latency, jitter,
+                    errorRate, rateLimitRate));
+            System.out.println(String.format(Locale.ENGLISH, "throughput   %.1f alerts/s (%d in %.1f s)",
+                    alerts / seconds, alerts, seconds));
+            System.out.println(String.format(Locale.ENGLISH, "latency      p50 %.1f ms, p99 %.1f ms, p99.9 %.1f ms",
+                    results.latency.getValueAtQuantile(0.5) / 1e3,
+                    results.latency.getValueAtQuantile(0.99) / 1e3,
+                    results.latency.getValueAtQuantile(0.999) / 1e3));
+            System.out.println(String.format(Locale.ENGLISH, "delivered    %d, not delivered %d, http requests %d",
+                    results.delivered.get(), alerts - results.delivered.get(), stub.getRequests() - requestsBefore));
+            System.out.println(String.format(Locale.ENGLISH, "received     %.1f MB, %d compressed, %d invalid requests",
+                    (stub.getReceivedBytes() - bytesBefore) / (1024.0 * 1024.0), stub.getCompressed(),
+                    stub.getInvalid()));
+            if (alternate != null) {
+                System.out.println(String.format(Locale.ENGLISH,
+                        "failover     secondary latency %d ms, errors %.2f, %d requests to the secondary stub",
+                        secondaryLatency, secondaryErrorRate, alternate.getRequests() - alternateRequestsBefore));
+            }
+            System.out.println(String.format(Locale.ENGLISH, "threads      %d before, %d peak, %d after",
+                    threadsBefore, threads.getPeakThreadCount(), threads.getThreadCount()));
+            System.out.println(String.format(Locale.ENGLISH, "heap         %+.1f MB after full gc",
+                    (heapAfter - heapBefore) / (1024.0 * 1024.0)));
+        } finally {
+            stub.close();
+            if (alternate != null) {
+                alternate.close();
+            }
+        }
+    }
+
+    private Results runBuilds(final OpsGenieStub stub, int builds, final int alertsPerBuild)
+            throws InterruptedException {
+        final Results results = new Results();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(builds);
+
+        for (int i = 0; i < builds; i++) {
+            final Run<?, ?> build = simulatedBuild(i);
+            Thread executor = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int alert = 0; alert < alertsPerBuild; alert++) {
+                            long begin = System.nanoTime();
+                            if (sendAlert(stub, build)) {
+                                results.delivered.incrementAndGet();
+                            }
+                            results.latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - begin));
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "Simulated build " + i);
+            executor.setDaemon(true);
+            executor.start();
+        }
+
+        start.countDown();
+        done.await();
+        return results;
+    }
+
+    private boolean sendAlert(OpsGenieStub stub, Run<?, ?> build) throws Exception {
+        OpsGenieNotificationRequest request = new OpsGenieNotificationRequest()
+                .setApiUrl(stub.getUrl())
+                .setApiKey("load-test-key")
+                .setAlertProperties(new AlertProperties()
+                        .setTags("load-test")
+                        .setTeams("platform")
+                        .setPriority(AlertPriority.P3))
+                .setBuild(build)
+                .setListener(TaskListener.NULL);
+        OpsGenieNotificationService service = new OpsGenieNotificationService(request);
+
+        if (async) {
+            Future<Boolean> delivery = service.sendAfterBuildDataAsync();
+            return delivery.get();
+        }
+        return service.sendAfterBuildData();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Run<?, ?> simulatedBuild(int index) {
+        Job job = mock(Job.class, withSettings().stubOnly());
+        when(job.getName()).thenReturn("load-test-" + index);
+        when(job.getFullName()).thenReturn("load-test/load-test-" + index);
+
+        Run build = mock(Run.class, withSettings().stubOnly());
+        when(build.getParent()).thenReturn(job);
+        when(build.getNumber()).thenReturn(1);
+        when(build.getResult()).thenReturn(Result.FAILURE);
+        when(build.getTimestamp()).thenReturn(Calendar.getInstance());
+        when(build.getStartTimeInMillis()).thenReturn(System.currentTimeMillis());
+        when(build.getDisplayName()).thenReturn("#1");
+        when(build.getUrl()).thenReturn("job/load-test-" + index + "/1/");
+        when(build.getDurationString()).thenReturn("1 min");
+        return build;
+    }
+
+    private static final class Results {
+        private final LogLinearHistogram latency = new LogLinearHistogram();
+        private final AtomicInteger delivered = new AtomicInteger();
+    }
+}
@@ -0,0 +1,230 @@
+package com.opsgenie.integration.jenkins;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * In-process stand-in for the OpsGenie Jenkins integration endpoint, listening on a random
+ * loopback port.
+ * <p/>
+ * Latency, server errors and rate limiting can be injected to see how delivery behaves when
+ * OpsGenie is slow or struggling. Each request is answered on its own thread, so slow responses
+ * do not hold up other requests.
+ * <p/>
+ * Gzip compressed requests are decompressed, and every body must be valid JSON or is answered
+ * with 400. When a payload is expected, decoded bodies that differ from it are counted as
+ * mismatches.
+ */
+public class OpsGenieStub implements Closeable {
+    static final String INTEGRATION_PATH = "/v1/json/jenkins";
+
+    private static final byte[] SUCCESS = "{\"result\":\"success\"}".getBytes(Charset.forName("UTF-8"));
+    private static final byte[] UNAVAILABLE = "{\"error\":\"Service unavailable\"}".getBytes(Charset.forName("UTF-8"));
+    private static final byte[] RATE_LIMITED = "{\"error\":\"Too many requests\"}".getBytes(Charset.forName("UTF-8"));
+    private static final byte[] INVALID = "{\"error\":\"Invalid payload\"}".getBytes(Charset.forName("UTF-8"));
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong compressed = new AtomicLong();
+    private final AtomicLong invalid = new AtomicLong();
+    private final AtomicLong mismatches = new AtomicLong();
+
+    private volatile long latencyMillis;
+    private volatile long latencyJitterMillis;
+    private volatile double errorRate;
+    private volatile double rateLimitRate;
+    private volatile int retryAfterSeconds = 1;
+    private volatile byte[] expectedPayload;
+
+    public OpsGenieStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext(INTEGRATION_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    byte[] body = readAll(exchange.getRequestBody());
+                    receivedBytes.addAndGet(body.length);
+                    requests.incrementAndGet();
+                    simulateLatency();
+
+                    byte[] payload = decode(exchange, body);
+                    if (payload == null) {
+                        invalid.incrementAndGet();
+                        respond(exchange, 400, INVALID);
+                        return;
+                    }
+                    byte[] expected = expectedPayload;
+                    if (expected != null && !Arrays.equals(expected, payload)) {
+                        mismatches.incrementAndGet();
+                    }
+
+                    double dice = ThreadLocalRandom.current().nextDouble();
+                    if (dice < rateLimitRate) {
+                        rateLimited.incrementAndGet();
+                        exchange.getResponseHeaders().set("Retry-After", Integer.toString(retryAfterSeconds));
+                        respond(exchange, 429, RATE_LIMITED);
+                    } else if (dice < rateLimitRate + errorRate) {
+                        errors.incrementAndGet();
+                        respond(exchange, 503, UNAVAILABLE);
+                    } else {
+                        respond(exchange, 200, SUCCESS);
+                    }
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * Delays every response by the given time plus a uniformly distributed jitter.
+     */
+    public OpsGenieStub setLatency(long millis, long jitterMillis) {
+        this.latencyMillis = millis;
+        this.latencyJitterMillis = jitterMillis;
+        return this;
+    }
+
+    /**
+     * Fraction of requests answered with 503.
+     */
+    public OpsGenieStub setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Fraction of requests answered with 429 and a {@code Retry-After} header.
+     */
+    public OpsGenieStub setRateLimitRate(double rateLimitRate, int retryAfterSeconds) {
+        this.rateLimitRate = rateLimitRate;
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    /**
+     * Payload every request must decode to, compared byte for byte. {@code null} only checks
+     * that requests are valid JSON.
+     */
+    public OpsGenieStub expectPayload(byte[] payload) {
+        this.expectedPayload = payload;
+        return this;
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getRateLimited() {
+        return rateLimited.get();
+    }
+
+    public long getCompressed() {
+        return compressed.get();
+    }
+
+    /**
+     * Requests answered with 400 because they could not be decompressed or were no valid JSON.
+     */
+    public long getInvalid() {
+        return invalid.get();
+    }
+
+    public long getMismatches() {
+        return mismatches.get();
+    }
+
+    /**
+     * Returns the decompressed body, or {@code null} if it is not valid (compressed) JSON.
+     */
+    private byte[] decode(HttpExchange exchange, byte[] body) {
+        byte[] payload = body;
+        try {
+            if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                compressed.incrementAndGet();
+                payload = readAll(new GZIPInputStream(new ByteArrayInputStream(body)));
+            }
+            mapper.readTree(payload);
+            return payload;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void simulateLatency() {
+        long delay = latencyMillis;
+        if (latencyJitterMillis > 0) {
+            delay += ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1);
+        }
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    static byte[] readAll(InputStream body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = body.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
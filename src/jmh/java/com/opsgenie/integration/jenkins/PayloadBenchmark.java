@@ -0,0 +1,153 @@
+package com.opsgenie.integration.jenkins;
+
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.User;
+import hudson.scm.ChangeLogSet;
+import hudson.tasks.test.TestResult;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Throughput of building and serializing the post build payload for suites and changelogs of
+ * different sizes. Run with the {@code benchmark} profile, see the README.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayloadBenchmark {
+
+    @Param({"10", "1000", "50000"})
+    public int entries;
+
+    private List<TestResult> failedTests;
+    private ChangeLogSet<ChangeLogSet.Entry> changeLogSet;
+    private Run<?, ?> build;
+    private DeliveryProfile profile;
+    private Map<String, Object> payload;
+    private PayloadLimits limits;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        limits = PayloadLimits.get();
+
+        failedTests = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            TestResult failedTest = mock(TestResult.class, withSettings().stubOnly());
+            when(failedTest.getFullName()).thenReturn("com.example.suite" + (i % 50) + ".SomeTest.testCase" + i);
+            when(failedTest.getErrorDetails()).thenReturn("expected:<" + i + "> but was:<" + (i + 1) + ">");
+            failedTests.add(failedTest);
+        }
+
+        User author = mock(User.class, withSettings().stubOnly());
+        when(author.getDisplayName()).thenReturn("Jane Doe");
+        changeLogSet = new ListChangeLogSet(entries, author);
+
+        Job job = mock(Job.class, withSettings().stubOnly());
+        when(job.getName()).thenReturn("benchmark-job");
+        Run run = mock(Run.class, withSettings().stubOnly());
+        when(run.getParent()).thenReturn(job);
+        when(run.getTimestamp()).thenReturn(Calendar.getInstance());
+        when(run.getDisplayName()).thenReturn("#42");
+        when(run.getResult()).thenReturn(Result.FAILURE);
+        when(run.getUrl()).thenReturn("job/benchmark-job/42/");
+        when(run.getStartTimeInMillis()).thenReturn(System.currentTimeMillis());
+        build = run;
+
+        profile = DeliveryProfile.create("https://api.opsgenie.com", "benchmark-key", "ci, nightly, backend",
+                "platform, release", "https://jenkins.example.com/", null);
+
+        payload = new HashMap<>();
+        OpsGenieNotificationService.populateRequestPayloadWithMandatoryFields(payload, build, profile);
+        payload.put("failedTests", PayloadFormatter.formatFailedTests(failedTests, limits));
+        payload.put("commitList", PayloadFormatter.formatCommitList(changeLogSet, limits));
+    }
+
+    @Benchmark
+    public Map<String, Object> mandatoryFields() {
+        Map<String, Object> fields = new HashMap<>();
+        OpsGenieNotificationService.populateRequestPayloadWithMandatoryFields(fields, build, profile);
+        return fields;
+    }
+
+    @Benchmark
+    public String formatFailedTests() {
+        return PayloadFormatter.formatFailedTests(failedTests, limits);
+    }
+
+    @Benchmark
+    public String formatCommitList() {
+        return PayloadFormatter.formatCommitList(changeLogSet, limits);
+    }
+
+    @Benchmark
+    public byte[] serializePayload() throws IOException {
+        return OpsGenieJson.writePayload(payload);
+    }
+
+    private static final class ListChangeLogSet extends ChangeLogSet<ChangeLogSet.Entry> {
+        private final List<ChangeLogSet.Entry> entries;
+
+        ListChangeLogSet(int size, final User author) {
+            super(null, null);
+            entries = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                final String message = "Fix issue #" + i + " in the payload formatter";
+                entries.add(new ChangeLogSet.Entry() {
+                    @Override
+                    public String getMsg() {
+                        return message;
+                    }
+
+                    @Override
+                    public User getAuthor() {
+                        return author;
+                    }
+
+                    @Override
+                    public java.util.Collection<String> getAffectedPaths() {
+                        return new ArrayList<>();
+                    }
+                });
+            }
+        }
+
+        @Override
+        public boolean isEmptySet() {
+            return entries.isEmpty();
+        }
+
+        @Override
+        public Iterator<ChangeLogSet.Entry> iterator() {
+            return entries.iterator();
+        }
+    }
+}
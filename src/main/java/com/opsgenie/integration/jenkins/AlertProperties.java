@@ -12,6 +12,8 @@ public class AlertProperties {
     private String teams;
     private AlertPriority priority;
     private AlertPriority buildStartPriority;
+    private boolean newFailuresOnly;
+    private boolean transitionsOnly;
 
     public AlertProperties setTags(String tags) {
         this.tags = tags;
@@ -49,4 +51,22 @@ public class AlertProperties {
         this.buildStartPriority = buildStartPriority;
         return this;
     }
+
+    public boolean isNewFailuresOnly() {
+        return newFailuresOnly;
+    }
+
+    public AlertProperties setNewFailuresOnly(boolean newFailuresOnly) {
+        this.newFailuresOnly = newFailuresOnly;
+        return this;
+    }
+
+    public boolean isTransitionsOnly() {
+        return transitionsOnly;
+    }
+
+    public AlertProperties setTransitionsOnly(boolean transitionsOnly) {
+        this.transitionsOnly = transitionsOnly;
+        return this;
+    }
 }
@@ -0,0 +1,289 @@
+package com.opsgenie.integration.jenkins;
+
+import hudson.model.Result;
+import hudson.model.Run;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns a storm of build failures into a single digest alert.
+ * <p/>
+ * Failures are counted per group of alerts going to the same OpsGenie account with the same
+ * teams and tags. Once more failures than the storm threshold happen within the window, further
+ * failures of the group are not sent on their own but collected, and a digest with their counts
+ * and the jobs failing most is sent at the end of every window. The storm is over as soon as a
+ * window collects fewer failures than the threshold, from then on failures are sent on their own
+ * again.
+ */
+public final class AlertStormAggregator {
+    public static final int DEFAULT_STORM_THRESHOLD = 0;
+    public static final int DEFAULT_STORM_WINDOW = 120;
+    public static final int DEFAULT_TOP_JOBS = 10;
+
+    static final int MAX_GROUPS = 1000;
+    static final int MAX_TRACKED_JOBS = 10000;
+
+    private static final Logger logger = LoggerFactory.getLogger(AlertStormAggregator.class);
+
+    private static final AlertStormAggregator instance = new AlertStormAggregator();
+
+    private final ConcurrentMap<String, Group> groups = new ConcurrentHashMap<>();
+    private volatile int stormThreshold = DEFAULT_STORM_THRESHOLD;
+    private volatile long windowMillis = TimeUnit.SECONDS.toMillis(DEFAULT_STORM_WINDOW);
+    private volatile int topJobs = DEFAULT_TOP_JOBS;
+
+    public static AlertStormAggregator get() {
+        return instance;
+    }
+
+    /**
+     * @param stormThreshold number of failures within the window that start a storm, 0 disables
+     *                       aggregation
+     * @param window         seconds in which failures are counted and collected into one digest
+     * @param topJobs        number of jobs listed by name in a digest
+     */
+    public void configure(int stormThreshold, int window, int topJobs) {
+        this.stormThreshold = stormThreshold;
+        this.windowMillis = TimeUnit.SECONDS.toMillis(window);
+        this.topJobs = topJobs;
+    }
+
+    /**
+     * Returns {@code true} if the build failed during a storm and was added to the digest of its
+     * group, in which case it must not be sent on its own.
+     */
+    public boolean offer(OpsGenieNotificationRequest request, Result result) {
+        if (stormThreshold <= 0 || (result != Result.FAILURE && result != Result.UNSTABLE)) {
+            return false;
+        }
+        return groupOf(request).offer(request.getBuild(), result, request.getAlertProperties().getPriority());
+    }
+
+    private Group groupOf(OpsGenieNotificationRequest request) {
+        AlertProperties alertProperties = request.getAlertProperties();
+        List<String> teams = sorted(OpsGenieNotificationService.splitStringWithComma(alertProperties.getTeams()));
+        List<String> tags = sorted(OpsGenieNotificationService.splitStringWithComma(alertProperties.getTags()));
+        String key = request.getApiUrl() + '\n' + request.getApiKey() + '\n' + teams + '\n' + tags;
+
+        Group group = groups.get(key);
+        if (group != null) {
+            return group;
+        }
+        if (groups.size() >= MAX_GROUPS) {
+            evictCalmGroups();
+        }
+        Group created = new Group(request.getApiUrl(), request.getApiKey(), teams, tags);
+        group = groups.putIfAbsent(key, created);
+        return group != null ? group : created;
+    }
+
+    private void evictCalmGroups() {
+        for (Map.Entry<String, Group> group : groups.entrySet()) {
+            if (group.getValue().isCalm()) {
+                groups.remove(group.getKey(), group.getValue());
+            }
+        }
+    }
+
+    private static List<String> sorted(List<String> values) {
+        return new ArrayList<>(new TreeSet<>(values));
+    }
+
+    private final class Group {
+        private final String apiUrl;
+        private final String apiKey;
+        private final List<String> teams;
+        private final List<String> tags;
+        private long windowStart;
+        private int failuresInWindow;
+        /** Collects failures while the group is in a storm, {@code null} otherwise. */
+        private Digest digest;
+
+        Group(String apiUrl, String apiKey, List<String> teams, List<String> tags) {
+            this.apiUrl = apiUrl;
+            this.apiKey = apiKey;
+            this.teams = teams;
+            this.tags = tags;
+        }
+
+        synchronized boolean offer(Run<?, ?> build, Result result, AlertPriority priority) {
+            if (digest != null) {
+                digest.add(build, result, priority);
+                return true;
+            }
+
+            long now = System.currentTimeMillis();
+            if (now - windowStart >= windowMillis) {
+                windowStart = now;
+                failuresInWindow = 0;
+            }
+            if (++failuresInWindow <= stormThreshold) {
+                return false;
+            }
+
+            logger.info("More than " + stormThreshold + " builds alerting teams " + teams
+                    + " failed, collecting further failures into a digest");
+            digest = new Digest(now);
+            digest.add(build, result, priority);
+            scheduleFlush();
+            return true;
+        }
+
+        synchronized boolean isCalm() {
+            return digest == null && System.currentTimeMillis() - windowStart >= windowMillis;
+        }
+
+        private void scheduleFlush() {
+            // The timer of the plugin, flushing hands the digest over to a delivery worker
+            OpsGenieDispatcher.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, windowMillis, TimeUnit.MILLISECONDS);
+        }
+
+        private void flush() {
+            Digest full;
+            synchronized (this) {
+                full = digest;
+                long now = System.currentTimeMillis();
+                if (stormThreshold > 0 && full.getBuildCount() >= stormThreshold) {
+                    digest = new Digest(now);
+                    scheduleFlush();
+                } else {
+                    logger.info("Storm of builds alerting teams " + teams + " is over, sending failures one by one");
+                    digest = null;
+                    windowStart = now;
+                    failuresInWindow = 0;
+                }
+            }
+            if (full.getBuildCount() > 0) {
+                send(full);
+            }
+        }
+
+        private void send(Digest digest) {
+            final byte[] payload;
+            try {
+                payload = OpsGenieJson.writePayload(digest.toPayload(teams, tags, topJobs));
+            } catch (IOException e) {
+                logger.error("Exception while serializing alert digest: " + e.getMessage());
+                return;
+            }
+
+            final AlertPriority priority = digest.highestPriority;
+            // Runs on the timer of the plugin, which must never deliver itself
+            boolean queued = OpsGenieDispatcher.get().tryExecute(new Runnable() {
+                @Override
+                public void run() {
+                    new OpsGenieWebhookSender(apiUrl, apiKey, priority, new PrintStream(new NullOutputStream()))
+                            .deliver(payload);
+                }
+            });
+            if (!queued && !OpsGenieOutbox.defer(apiUrl, apiKey, payload)) {
+                logger.warn("OpsGenie delivery queue is full, dropping digest of " + digest.getBuildCount()
+                        + " builds alerting teams " + teams);
+            }
+        }
+    }
+
+    private static final class Digest {
+        private final long startedAt;
+        private final Map<String, int[]> failuresByJob = new HashMap<>();
+        private int failedBuilds;
+        private int unstableBuilds;
+        private int untrackedBuilds;
+        private AlertPriority highestPriority;
+
+        Digest(long startedAt) {
+            this.startedAt = startedAt;
+        }
+
+        void add(Run<?, ?> build, Result result, AlertPriority priority) {
+            if (result == Result.UNSTABLE) {
+                unstableBuilds++;
+            } else {
+                failedBuilds++;
+            }
+            if (priority != null && (highestPriority == null || priority.ordinal() < highestPriority.ordinal())) {
+                highestPriority = priority;
+            }
+
+            String job = build.getParent().getFullName();
+            int[] count = failuresByJob.get(job);
+            if (count != null) {
+                count[0]++;
+            } else if (failuresByJob.size() < MAX_TRACKED_JOBS) {
+                failuresByJob.put(job, new int[]{1});
+            } else {
+                untrackedBuilds++;
+            }
+        }
+
+        int getBuildCount() {
+            return failedBuilds + unstableBuilds;
+        }
+
+        Map<String, Object> toPayload(List<String> teams, List<String> tags, int topJobs) {
+            List<Map.Entry<String, int[]>> jobs = new ArrayList<>(failuresByJob.entrySet());
+            Collections.sort(jobs, new Comparator<Map.Entry<String, int[]>>() {
+                @Override
+                public int compare(Map.Entry<String, int[]> first, Map.Entry<String, int[]> second) {
+                    int byCount = second.getValue()[0] - first.getValue()[0];
+                    return byCount != 0 ? byCount : first.getKey().compareTo(second.getKey());
+                }
+            });
+
+            List<String> topJobNames = new ArrayList<>();
+            for (Map.Entry<String, int[]> job : jobs.subList(0, Math.min(topJobs, jobs.size()))) {
+                topJobNames.add(job.getValue()[0] > 1 ? job.getKey() + " (" + job.getValue()[0] + ")" : job.getKey());
+            }
+            StringBuilder failedJobs = new StringBuilder(StringUtils.join(topJobNames, "\n"));
+            if (jobs.size() > topJobNames.size()) {
+                failedJobs.append("\n+").append(jobs.size() - topJobNames.size()).append(" more jobs");
+            }
+            if (untrackedBuilds > 0) {
+                failedJobs.append("\n+").append(untrackedBuilds).append(" more builds");
+            }
+
+            Map<String, Object> payload = new LinkedHashMap<>();
+            payload.put("time", Objects.toString(new Date(startedAt)));
+            payload.put("projectName", "Alert storm");
+            payload.put("displayName", getBuildCount() + " failed builds in " + jobs.size() + " jobs");
+            payload.put("status", Objects.toString(failedBuilds > 0 ? Result.FAILURE : Result.UNSTABLE));
+            payload.put("url", DeliveryProfile.rootUrl());
+            payload.put("tags", tags);
+            payload.put("teams", teams);
+            payload.put("startTimeInMillis", Objects.toString(startedAt));
+            payload.put("isPreBuild", "false");
+            payload.put("isDigest", "true");
+            payload.put("failedBuildCount", Integer.toString(failedBuilds));
+            payload.put("unstableBuildCount", Integer.toString(unstableBuilds));
+            payload.put("failedJobCount", Integer.toString(jobs.size()));
+            payload.put("failedJobs", failedJobs.toString());
+            if (highestPriority != null) {
+                payload.put("priority", highestPriority.getValue());
+            }
+            return payload;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.opsgenie.integration.jenkins;
+
+import hudson.model.Result;
+import hudson.model.Run;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether a post build alert is worth sending given the status history of the job.
+ * <p/>
+ * Alerts can be limited to builds whose result differs from the previous one. Independently, a
+ * job whose result changed at least the flap threshold number of times within the flap window
+ * is considered flapping: a single alert marked as flapping is sent and further alerts are
+ * suppressed until the job settles down.
+ * <p/>
+ * The result of a build is recorded when its alert is decided on, so that builds completing at
+ * the same time see each other. Should the alert be lost, {@link #forget(Run, Result)} takes the
+ * result back.
+ */
+public final class AlertTransitionFilter {
+    public static final int DEFAULT_FLAP_THRESHOLD = 0;
+    public static final int DEFAULT_FLAP_WINDOW = 30;
+
+    static final int MAX_JOBS = 50000;
+    static final int MAX_FLAP_THRESHOLD = 32;
+
+    private static final AlertTransitionFilter instance = new AlertTransitionFilter();
+
+    private final ConcurrentMap<String, JobState> states = new ConcurrentHashMap<>();
+    private volatile int flapThreshold = DEFAULT_FLAP_THRESHOLD;
+    private volatile long flapWindowMillis = TimeUnit.MINUTES.toMillis(DEFAULT_FLAP_WINDOW);
+
+    public enum Decision {
+        SEND(true),
+        SEND_FLAPPING(true),
+        SUPPRESS_UNCHANGED(false),
+        SUPPRESS_FLAPPING(false);
+
+        private final boolean send;
+
+        Decision(boolean send) {
+            this.send = send;
+        }
+
+        public boolean isSend() {
+            return send;
+        }
+    }
+
+    public static AlertTransitionFilter get() {
+        return instance;
+    }
+
+    /**
+     * @param flapThreshold number of result changes within the window that make a job flapping,
+     *                      0 disables flap detection
+     * @param flapWindow    minutes in which result changes are counted
+     */
+    public void configure(int flapThreshold, int flapWindow) {
+        this.flapThreshold = Math.min(flapThreshold, MAX_FLAP_THRESHOLD);
+        this.flapWindowMillis = TimeUnit.MINUTES.toMillis(flapWindow);
+    }
+
+    public Decision decide(Run<?, ?> build, Result result, boolean transitionsOnly) {
+        int threshold = flapThreshold;
+        if (!transitionsOnly && threshold <= 0) {
+            return Decision.SEND;
+        }
+
+        JobState state = stateOf(build);
+        long now = System.currentTimeMillis();
+        synchronized (state) {
+            boolean changed = state.lastResult == null || state.lastResult.ordinal != result.ordinal;
+            state.lastResult = result;
+            if (changed) {
+                state.recordTransition(now);
+            }
+
+            if (threshold > 0) {
+                int recentTransitions = state.countTransitionsSince(now - flapWindowMillis, threshold);
+                if (recentTransitions >= threshold) {
+                    if (!state.flapping) {
+                        state.flapping = true;
+                        return Decision.SEND_FLAPPING;
+                    }
+                    return Decision.SUPPRESS_FLAPPING;
+                }
+                state.flapping = false;
+            }
+
+            return !transitionsOnly || changed ? Decision.SEND : Decision.SUPPRESS_UNCHANGED;
+        }
+    }
+
+    /**
+     * Forgets the result of the build if it is still the last one recorded for its job. Called
+     * when its alert was lost, so that the next build with the same result counts as a change
+     * and alerts again.
+     */
+    public void forget(Run<?, ?> build, Result result) {
+        JobState state = states.get(build.getParent().getFullName());
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            if (state.lastResult != null && state.lastResult.ordinal == result.ordinal) {
+                state.lastResult = null;
+            }
+        }
+    }
+
+    private JobState stateOf(Run<?, ?> build) {
+        String job = build.getParent().getFullName();
+        JobState state = states.get(job);
+        if (state != null) {
+            return state;
+        }
+
+        if (states.size() >= MAX_JOBS) {
+            // Forget some arbitrary jobs, they are seeded again from the status cache when seen
+            Iterator<String> jobs = states.keySet().iterator();
+            for (int i = 0; i < MAX_JOBS / 10 && jobs.hasNext(); i++) {
+                jobs.next();
+                jobs.remove();
+            }
+        }
+
+        JobState created = new JobState();
+        JobStatusCache.BuildSummary previous = JobStatusCache.get().getPrevious(build);
+        if (previous != null) {
+            created.lastResult = previous.getResult();
+        }
+        state = states.putIfAbsent(job, created);
+        return state != null ? state : created;
+    }
+
+    private static final class JobState {
+        private Result lastResult;
+        private boolean flapping;
+        private long[] transitions;
+        private int next;
+
+        void recordTransition(long time) {
+            if (transitions == null) {
+                transitions = new long[MAX_FLAP_THRESHOLD];
+            }
+            transitions[next] = time;
+            next = (next + 1) % transitions.length;
+        }
+
+        int countTransitionsSince(long since, int limit) {
+            if (transitions == null) {
+                return 0;
+            }
+            int count = 0;
+            for (long transition : transitions) {
+                if (transition >= since && ++count >= limit) {
+                    break;
+                }
+            }
+            return count;
+        }
+    }
+}
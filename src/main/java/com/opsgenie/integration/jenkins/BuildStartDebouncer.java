@@ -0,0 +1,88 @@
+package com.opsgenie.integration.jenkins;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds build start alerts for a grace period, so that builds finishing within it only send
+ * their result. A held alert is sent once the grace period passed, unless the post build alert
+ * of the build cancelled it before.
+ */
+public final class BuildStartDebouncer {
+    public static final int DEFAULT_GRACE_PERIOD = 0;
+
+    private static final BuildStartDebouncer instance = new BuildStartDebouncer();
+
+    private final ConcurrentMap<String, Held> held = new ConcurrentHashMap<>();
+    private volatile int gracePeriod = DEFAULT_GRACE_PERIOD;
+
+    public static BuildStartDebouncer get() {
+        return instance;
+    }
+
+    /**
+     * @param gracePeriod seconds a build start alert is held, 0 sends it right away
+     */
+    public void configure(int gracePeriod) {
+        this.gracePeriod = gracePeriod;
+    }
+
+    public boolean isEnabled() {
+        return gracePeriod > 0;
+    }
+
+    public int getGracePeriod() {
+        return gracePeriod;
+    }
+
+    /**
+     * Runs the delivery once the grace period passed, unless {@link #cancel(String)} is called
+     * with the same key before. Replaces an alert still held under the key.
+     * <p/>
+     * The delivery runs on the timer thread of the plugin, so it must only hand the alert over
+     * and never send it itself.
+     */
+    public void hold(final String key, final Runnable delivery) {
+        final Held entry = new Held();
+        Held previous = held.put(key, entry);
+        if (previous != null) {
+            previous.cancel();
+        }
+
+        entry.future = OpsGenieDispatcher.schedule(new Runnable() {
+            @Override
+            public void run() {
+                // Whoever removes the entry decides, so the alert is either sent or cancelled
+                if (held.remove(key, entry)) {
+                    delivery.run();
+                }
+            }
+        }, gracePeriod, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Drops the alert held under the key. Returns {@code true} if there was one that was not
+     * sent yet.
+     */
+    public boolean cancel(String key) {
+        Held entry = held.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        entry.cancel();
+        return true;
+    }
+
+    private static final class Held {
+        private volatile Future<?> future;
+
+        void cancel() {
+            Future<?> scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.opsgenie.integration.jenkins;
+
+import hudson.Extension;
+import hudson.ProxyConfiguration;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import jenkins.model.Jenkins;
+import jenkins.model.JenkinsLocationConfiguration;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.HttpHost;
+import org.apache.http.client.utils.URIBuilder;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Everything about sending an alert that depends on the configuration only: the tags and teams
+ * parsed from their comma separated form, the endpoint URI built from the API URL and key, the
+ * proxy to send it through and the root URL of Jenkins.
+ * <p/>
+ * Profiles are immutable and cached per configuration, so that alerts do not parse the same
+ * settings again every time. The cache is cleared whenever the global configuration of the
+ * plugin, the Jenkins location or the proxy configuration is saved.
+ */
+public final class DeliveryProfile {
+    static final String INTEGRATION_PATH = "/v1/json/jenkins";
+    static final int MAX_PROFILES = 1000;
+
+    private static final ConcurrentMap<List<String>, DeliveryProfile> profiles = new ConcurrentHashMap<>();
+
+    private final String apiUrl;
+    private final String apiKey;
+    private final URI endpoint;
+    private final URISyntaxException endpointError;
+    private final HttpHost proxy;
+    private final List<String> tags;
+    private final List<String> teams;
+    private final String rootUrl;
+
+    private DeliveryProfile(String apiUrl, String apiKey, String tags, String teams, String rootUrl,
+                            ProxyConfiguration proxyConfiguration) {
+        this.apiUrl = apiUrl;
+        this.apiKey = apiKey;
+        this.tags = Collections.unmodifiableList(OpsGenieNotificationService.splitStringWithComma(tags));
+        this.teams = Collections.unmodifiableList(OpsGenieNotificationService.splitStringWithComma(teams));
+        this.rootUrl = StringUtils.defaultString(rootUrl);
+
+        URI endpoint = null;
+        URISyntaxException endpointError = null;
+        String host = StringUtils.defaultString(apiUrl);
+        try {
+            URI inputURI = new URI(host);
+            String scheme = "https";
+            int port = -1;
+            if (inputURI.isAbsolute()) {
+                scheme = inputURI.getScheme();
+                host = inputURI.getHost();
+                port = inputURI.getPort();
+            }
+
+            endpoint = new URIBuilder()
+                    .setScheme(scheme)
+                    .setHost(host)
+                    .setPort(port)
+                    .setPath(INTEGRATION_PATH)
+                    .addParameter("apiKey", apiKey)
+                    .build();
+        } catch (URISyntaxException e) {
+            // Reported by every alert sent with this profile, as it was before profiles were cached
+            endpointError = e;
+        }
+        this.endpoint = endpoint;
+        this.endpointError = endpointError;
+        this.proxy = endpoint != null ? proxyFor(host, proxyConfiguration) : null;
+    }
+
+    /**
+     * Returns the profile of the given settings, creating it on first use.
+     */
+    public static DeliveryProfile get(String apiUrl, String apiKey, String tags, String teams) {
+        List<String> key = Arrays.asList(apiUrl, apiKey, tags, teams);
+        DeliveryProfile profile = profiles.get(key);
+        if (profile != null) {
+            return profile;
+        }
+
+        if (profiles.size() >= MAX_PROFILES) {
+            // Only reachable with settings generated per build, those gain nothing from the cache
+            profiles.clear();
+        }
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        DeliveryProfile created = create(apiUrl, apiKey, tags, teams, rootUrl(),
+                jenkins != null ? jenkins.proxy : null);
+        profile = profiles.putIfAbsent(key, created);
+        return profile != null ? profile : created;
+    }
+
+    /**
+     * Creates a profile that is not cached, without looking anything up in Jenkins.
+     */
+    static DeliveryProfile create(String apiUrl, String apiKey, String tags, String teams, String rootUrl,
+                                  ProxyConfiguration proxyConfiguration) {
+        return new DeliveryProfile(apiUrl, apiKey, tags, teams, rootUrl, proxyConfiguration);
+    }
+
+    /**
+     * Forgets all profiles, so that they are created again from the current configuration.
+     */
+    public static void invalidateAll() {
+        profiles.clear();
+    }
+
+    static String rootUrl() {
+        // Only missing when driven outside of Jenkins, such as by the load test harness
+        String rootUrl = Jenkins.getInstanceOrNull() != null ? JenkinsLocationConfiguration.get().getUrl() : null;
+        return StringUtils.defaultString(rootUrl);
+    }
+
+    private static HttpHost proxyFor(String host, ProxyConfiguration proxy) {
+        if (proxy == null) {
+            return null;
+        }
+
+        // Check if the host of opsgenie is excluded from the proxy.
+        for (Pattern pattern : proxy.getNoProxyHostPatterns()) {
+            if (pattern.matcher(host).matches()) {
+                return null;
+            }
+        }
+        return new HttpHost(proxy.name, proxy.port);
+    }
+
+    public String getApiUrl() {
+        return apiUrl;
+    }
+
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    /**
+     * Returns the integration endpoint, including the API key.
+     *
+     * @throws URISyntaxException if the API URL is not valid
+     */
+    public URI getEndpoint() throws URISyntaxException {
+        if (endpointError != null) {
+            throw endpointError;
+        }
+        return endpoint;
+    }
+
+    /**
+     * Returns the proxy to send alerts through, or {@code null} if they are sent directly.
+     */
+    public HttpHost getProxy() {
+        return proxy;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public List<String> getTeams() {
+        return teams;
+    }
+
+    public String getRootUrl() {
+        return rootUrl;
+    }
+
+    /**
+     * Clears the profiles when the Jenkins location or the proxy configuration changed, which
+     * are configured outside of the plugin.
+     */
+    @Extension
+    public static final class ConfigurationListener extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof JenkinsLocationConfiguration || o instanceof ProxyConfiguration) {
+                invalidateAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.opsgenie.integration.jenkins;
+
+import hudson.model.Run;
+import hudson.tasks.test.AbstractTestResultAction;
+import hudson.tasks.test.TestResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the failed tests of the latest build of each job as a sorted array of 64 bit hashes
+ * of the test names, so that the next build can tell new failures apart from known ones without
+ * loading the previous test report from disk.
+ * <p/>
+ * The failures of a build are only remembered once they were reported, see {@link #commit(Run)}.
+ * Failures of a build whose alert was sent without its test results count as new again.
+ */
+public final class FailedTestsCache {
+    static final int MAX_JOBS = 2000;
+
+    private static final FailedTestsCache instance = new FailedTestsCache();
+
+    private final Map<String, Snapshot> snapshots = Collections.synchronizedMap(
+            new LinkedHashMap<String, Snapshot>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+                    return size() > MAX_JOBS;
+                }
+            });
+
+    /**
+     * Failures of builds that were compared, but not yet reported.
+     */
+    private final Map<String, Snapshot> pending = Collections.synchronizedMap(
+            new LinkedHashMap<String, Snapshot>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+                    return size() > MAX_JOBS;
+                }
+            });
+
+    public static FailedTestsCache get() {
+        return instance;
+    }
+
+    /**
+     * Compares the failures of the build with those of the build before it. They are remembered
+     * for the next build once {@link #commit(Run)} is called.
+     */
+    public Diff diff(Run<?, ?> build, List<? extends TestResult> failedTests) {
+        long[] current = hashes(failedTests);
+        long[] previous = previousFailures(build);
+
+        List<TestResult> newFailures = new ArrayList<>();
+        int stillFailing = 0;
+        for (TestResult failedTest : failedTests) {
+            if (Arrays.binarySearch(previous, hash(failedTest.getFullName())) >= 0) {
+                stillFailing++;
+            } else {
+                newFailures.add(failedTest);
+            }
+        }
+        remember(pending, build.getParent().getFullName(), new Snapshot(build.getNumber(), current));
+
+        return new Diff(newFailures, stillFailing, Math.max(0, previous.length - stillFailing));
+    }
+
+    /**
+     * Remembers the failures of the build compared last for the next build, unless a newer build
+     * of the job was remembered already.
+     */
+    public void commit(Run<?, ?> build) {
+        String job = build.getParent().getFullName();
+        Snapshot snapshot;
+        synchronized (pending) {
+            snapshot = pending.get(job);
+            if (snapshot == null || snapshot.buildNumber != build.getNumber()) {
+                return;
+            }
+            pending.remove(job);
+        }
+        remember(snapshots, job, snapshot);
+    }
+
+    /**
+     * Keeps the snapshot of the newest build, builds may finish in a different order than they
+     * started.
+     */
+    private static void remember(Map<String, Snapshot> snapshots, String job, Snapshot snapshot) {
+        synchronized (snapshots) {
+            Snapshot remembered = snapshots.get(job);
+            if (remembered == null || remembered.buildNumber < snapshot.buildNumber) {
+                snapshots.put(job, snapshot);
+            }
+        }
+    }
+
+    private long[] previousFailures(Run<?, ?> build) {
+        Snapshot snapshot = snapshots.get(build.getParent().getFullName());
+        if (snapshot != null && snapshot.buildNumber < build.getNumber()) {
+            return snapshot.failures;
+        }
+
+        // Not seen since the controller started, look at the previous report once
+        Run<?, ?> previousBuild = build.getPreviousCompletedBuild();
+        if (previousBuild == null) {
+            return new long[0];
+        }
+        AbstractTestResultAction<?> testResult = previousBuild.getAction(AbstractTestResultAction.class);
+        return testResult != null ? hashes(testResult.getFailedTests()) : new long[0];
+    }
+
+    private static long[] hashes(List<? extends TestResult> failedTests) {
+        long[] hashes = new long[failedTests.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = hash(failedTests.get(i).getFullName());
+        }
+        Arrays.sort(hashes);
+        return hashes;
+    }
+
+    /**
+     * 64 bit FNV-1a, collisions are practically impossible for the size of a test suite.
+     */
+    static long hash(String testId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < testId.length(); i++) {
+            hash ^= testId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static final class Snapshot {
+        private final int buildNumber;
+        private final long[] failures;
+
+        private Snapshot(int buildNumber, long[] failures) {
+            this.buildNumber = buildNumber;
+            this.failures = failures;
+        }
+    }
+
+    public static final class Diff {
+        private final List<TestResult> newFailures;
+        private final int stillFailingCount;
+        private final int fixedCount;
+
+        Diff(List<TestResult> newFailures, int stillFailingCount, int fixedCount) {
+            this.newFailures = newFailures;
+            this.stillFailingCount = stillFailingCount;
+            this.fixedCount = fixedCount;
+        }
+
+        public List<TestResult> getNewFailures() {
+            return newFailures;
+        }
+
+        public int getStillFailingCount() {
+            return stillFailingCount;
+        }
+
+        public int getFixedCount() {
+            return fixedCount;
+        }
+    }
+}
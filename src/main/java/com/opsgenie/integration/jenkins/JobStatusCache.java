@@ -0,0 +1,120 @@
+package com.opsgenie.integration.jenkins;
+
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps a small summary of the latest completed build of each job in memory, so that the
+ * {@code previous*} payload fields do not have to load an older build record from disk.
+ */
+public final class JobStatusCache {
+    static final int MAX_JOBS = 10000;
+
+    private static final JobStatusCache instance = new JobStatusCache();
+
+    private final Map<String, BuildSummary> summaries = Collections.synchronizedMap(
+            new LinkedHashMap<String, BuildSummary>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, BuildSummary> eldest) {
+                    return size() > MAX_JOBS;
+                }
+            });
+
+    public static JobStatusCache get() {
+        return instance;
+    }
+
+    public void update(Run<?, ?> build) {
+        remember(build.getParent().getFullName(), new BuildSummary(build));
+    }
+
+    /**
+     * Returns the summary of the latest completed build before the given one. Only when the job
+     * was not seen since the controller started is the previous build looked up, after which it
+     * is cached.
+     */
+    public BuildSummary getPrevious(Run<?, ?> build) {
+        Job<?, ?> job = build.getParent();
+        BuildSummary summary = summaries.get(job.getFullName());
+        if (summary != null && summary.getNumber() < build.getNumber()) {
+            return summary;
+        }
+
+        Run<?, ?> previousBuild = build.getPreviousBuild();
+        if (previousBuild == null) {
+            return null;
+        }
+        summary = new BuildSummary(previousBuild);
+        if (previousBuild.getResult() != null) {
+            remember(job.getFullName(), summary);
+        }
+        return summary;
+    }
+
+    /**
+     * Keeps the summary of the newest build, builds may finish in a different order than they
+     * started and the fallback above may look up an older build than the one cached.
+     */
+    private void remember(String job, BuildSummary summary) {
+        synchronized (summaries) {
+            BuildSummary remembered = summaries.get(job);
+            if (remembered == null || remembered.getNumber() < summary.getNumber()) {
+                summaries.put(job, summary);
+            }
+        }
+    }
+
+    public static final class BuildSummary {
+        private final int number;
+        private final Result result;
+        private final long timestamp;
+        private final String displayName;
+        private final String projectName;
+
+        BuildSummary(Run<?, ?> build) {
+            this.number = build.getNumber();
+            this.result = build.getResult();
+            this.timestamp = build.getTimeInMillis();
+            this.displayName = build.getDisplayName();
+            this.projectName = build.getParent().getName();
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public Result getResult() {
+            return result;
+        }
+
+        public Date getTime() {
+            return new Date(timestamp);
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        public String getProjectName() {
+            return projectName;
+        }
+    }
+
+    @Extension
+    public static class Listener extends RunListener<Run<?, ?>> {
+        @Override
+        public void onCompleted(Run<?, ?> run, @Nonnull TaskListener listener) {
+            JobStatusCache.get().update(run);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.opsgenie.integration.jenkins;
+
+import hudson.init.Terminator;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.Timer;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plugin wide non-blocking HTTP client, used instead of {@link OpsGenieHttpClient} when the
+ * non-blocking transport is selected in the global configuration.
+ * <p/>
+ * Requests are multiplexed over a small fixed number of I/O threads, so an alert that waits for
+ * OpsGenie to answer does not hold a thread of its own. Callbacks run on the I/O threads and
+ * must not block.
+ */
+public final class OpsGenieAsyncHttpClient {
+    public static final int DEFAULT_IO_THREADS = 2;
+
+    private static final Logger logger = LoggerFactory.getLogger(OpsGenieAsyncHttpClient.class);
+
+    private static volatile OpsGenieAsyncHttpClient instance;
+
+    private final CloseableHttpAsyncClient client;
+    private final RequestConfig requestConfig;
+    private final int socketTimeout;
+
+    private OpsGenieAsyncHttpClient(int ioThreads,
+                                    int maxConnections,
+                                    int maxConnectionsPerRoute,
+                                    int connectTimeout,
+                                    int socketTimeout,
+                                    int connectionRequestTimeout) throws IOReactorException {
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(ioThreads)
+                .setConnectTimeout(connectTimeout)
+                .setSoTimeout(socketTimeout)
+                .build();
+        PoolingNHttpClientConnectionManager connectionManager = new PoolingNHttpClientConnectionManager(
+                new DefaultConnectingIOReactor(ioReactorConfig,
+                        new NamingThreadFactory(new DaemonThreadFactory(), "OpsGenie I/O dispatcher")));
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+
+        this.socketTimeout = socketTimeout;
+        this.requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(socketTimeout)
+                .setConnectionRequestTimeout(connectionRequestTimeout)
+                .build();
+
+        this.client = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                .setThreadFactory(new NamingThreadFactory(new DaemonThreadFactory(), "OpsGenie I/O reactor"))
+                .useSystemProperties()
+                .build();
+        this.client.start();
+    }
+
+    /**
+     * Returns the shared client, or {@code null} if the blocking transport is used.
+     */
+    public static OpsGenieAsyncHttpClient get() {
+        return instance;
+    }
+
+    /**
+     * Replaces the shared client with one built from the given settings, or removes it if the
+     * non-blocking transport is not enabled. The previous client is closed once requests that
+     * are still in flight on it had the chance to finish.
+     */
+    public static synchronized void configure(boolean enabled,
+                                              int ioThreads,
+                                              int maxConnections,
+                                              int maxConnectionsPerRoute,
+                                              int connectTimeout,
+                                              int socketTimeout,
+                                              int connectionRequestTimeout) {
+        final OpsGenieAsyncHttpClient previous = instance;
+        instance = null;
+        if (enabled) {
+            try {
+                instance = new OpsGenieAsyncHttpClient(ioThreads, maxConnections, maxConnectionsPerRoute,
+                        connectTimeout, socketTimeout, connectionRequestTimeout);
+            } catch (IOReactorException e) {
+                logger.error("Could not start the non-blocking OpsGenie http client, using the blocking one: "
+                        + e.getMessage());
+            }
+        }
+
+        if (previous != null) {
+            Timer.get().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    previous.close();
+                }
+            }, previous.socketTimeout + OpsGenieHttpClient.DEFAULT_CONNECT_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Terminator
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.close();
+            instance = null;
+        }
+    }
+
+    /**
+     * Same as {@link OpsGenieHttpClient#requestConfig(long)}.
+     */
+    public RequestConfig.Builder requestConfig(long budgetMillis) {
+        int budget = (int) Math.max(1, Math.min(budgetMillis, Integer.MAX_VALUE));
+        return RequestConfig.copy(requestConfig)
+                .setConnectTimeout(Math.min(requestConfig.getConnectTimeout(), budget))
+                .setSocketTimeout(Math.min(requestConfig.getSocketTimeout(), budget))
+                .setConnectionRequestTimeout(Math.min(requestConfig.getConnectionRequestTimeout(), budget));
+    }
+
+    /**
+     * Starts the request and returns right away. The response is buffered in memory before the
+     * callback is invoked on an I/O thread.
+     */
+    public void execute(HttpUriRequest request, FutureCallback<HttpResponse> callback) {
+        client.execute(request, callback);
+    }
+
+    private void close() {
+        try {
+            client.close();
+        } catch (IOException e) {
+            logger.warn("Exception while closing non-blocking OpsGenie http client: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.opsgenie.integration.jenkins;
+
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+
+import java.util.Objects;
+
+/**
+ * Payload fields of a build that do not change while it runs. They are captured by the first
+ * alert of the build and reused by the alerts sent after it, such as the post build alert
+ * following the pre build one.
+ * <p/>
+ * The display name and the status are left out, the build may still change them.
+ */
+public class OpsGenieBuildFieldsAction extends InvisibleAction {
+    private final String time;
+    private final String projectName;
+    private final String url;
+    private final String startTimeInMillis;
+
+    private OpsGenieBuildFieldsAction(Run<?, ?> build) {
+        this.time = Objects.toString(build.getTimestamp().getTime());
+        this.projectName = build.getParent().getName();
+        this.url = build.getUrl();
+        this.startTimeInMillis = Objects.toString(build.getStartTimeInMillis());
+    }
+
+    /**
+     * Returns the fields captured for the build, capturing them now if no alert was sent for it
+     * yet.
+     */
+    public static OpsGenieBuildFieldsAction of(Run<?, ?> build) {
+        OpsGenieBuildFieldsAction fields = build.getAction(OpsGenieBuildFieldsAction.class);
+        if (fields == null) {
+            fields = new OpsGenieBuildFieldsAction(build);
+            build.addOrReplaceAction(fields);
+        }
+        return fields;
+    }
+
+    public String getTime() {
+        return time;
+    }
+
+    public String getProjectName() {
+        return projectName;
+    }
+
+    /**
+     * Returns the URL of the build relative to the root URL of Jenkins.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    public String getStartTimeInMillis() {
+        return startTimeInMillis;
+    }
+}
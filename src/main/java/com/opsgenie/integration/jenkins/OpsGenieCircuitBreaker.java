@@ -0,0 +1,182 @@
+package com.opsgenie.integration.jenkins;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plugin wide circuit breaker for a single OpsGenie endpoint.
+ * <p/>
+ * While closed, the outcome of every request is counted in a rolling window. Once enough
+ * requests were made and the share of failures reaches the threshold the breaker opens and
+ * requests to the endpoint are refused right away instead of each build waiting for the
+ * timeout. After the open duration a single probe request is let through; the breaker closes if
+ * it succeeds and opens again otherwise.
+ */
+public final class OpsGenieCircuitBreaker {
+    public static final int DEFAULT_FAILURE_THRESHOLD = 50;
+    public static final int DEFAULT_MINIMUM_REQUESTS = 10;
+    public static final int DEFAULT_WINDOW = 60;
+    public static final int DEFAULT_OPEN_DURATION = 30;
+
+    private static final int BUCKETS = 10;
+
+    private static final Logger logger = LoggerFactory.getLogger(OpsGenieCircuitBreaker.class);
+
+    private static final ConcurrentMap<String, OpsGenieCircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    private static volatile boolean enabled;
+    private static volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private static volatile int minimumRequests = DEFAULT_MINIMUM_REQUESTS;
+    private static volatile long windowMillis = TimeUnit.SECONDS.toMillis(DEFAULT_WINDOW);
+    private static volatile long openMillis = TimeUnit.SECONDS.toMillis(DEFAULT_OPEN_DURATION);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String endpoint;
+    private final int[] successes = new int[BUCKETS];
+    private final int[] failures = new int[BUCKETS];
+    private final long[] bucketStarts = new long[BUCKETS];
+    private volatile State state = State.CLOSED;
+    private long openedAt;
+
+    private OpsGenieCircuitBreaker(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public static void configure(boolean enabled, int failureThreshold, int minimumRequests,
+                                 int windowSeconds, int openSeconds) {
+        OpsGenieCircuitBreaker.failureThreshold = failureThreshold;
+        OpsGenieCircuitBreaker.minimumRequests = minimumRequests;
+        OpsGenieCircuitBreaker.windowMillis = TimeUnit.SECONDS.toMillis(windowSeconds);
+        OpsGenieCircuitBreaker.openMillis = TimeUnit.SECONDS.toMillis(openSeconds);
+        OpsGenieCircuitBreaker.enabled = enabled;
+        breakers.clear();
+    }
+
+    /**
+     * Returns the breaker guarding the given endpoint, or {@code null} if circuit breaking is
+     * disabled.
+     */
+    public static OpsGenieCircuitBreaker forEndpoint(String endpoint) {
+        if (!enabled) {
+            return null;
+        }
+
+        OpsGenieCircuitBreaker breaker = breakers.get(endpoint);
+        if (breaker == null) {
+            OpsGenieCircuitBreaker created = new OpsGenieCircuitBreaker(endpoint);
+            breaker = breakers.putIfAbsent(endpoint, created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Returns whether a request may be sent now. When the open duration elapsed, exactly one
+     * caller is allowed through as the probe.
+     */
+    public boolean allowRequest() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+
+        synchronized (this) {
+            if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+                state = State.HALF_OPEN;
+                return true;
+            }
+            return state == State.CLOSED;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        if (state == State.HALF_OPEN) {
+            logger.info("OpsGenie endpoint " + endpoint + " recovered, closing circuit breaker");
+            reset();
+            state = State.CLOSED;
+            return;
+        }
+        successes[currentBucket()]++;
+    }
+
+    public synchronized void recordFailure() {
+        long now = System.currentTimeMillis();
+        if (state == State.HALF_OPEN) {
+            open(now);
+            return;
+        }
+
+        failures[currentBucket()]++;
+        if (state != State.CLOSED) {
+            return;
+        }
+
+        int total = 0;
+        int failed = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (now - bucketStarts[i] < windowMillis) {
+                total += successes[i] + failures[i];
+                failed += failures[i];
+            }
+        }
+        if (total >= minimumRequests && failed * 100 >= failureThreshold * total) {
+            logger.warn("OpsGenie endpoint " + endpoint + " failed " + failed + " of " + total
+                    + " requests, opening circuit breaker");
+            open(now);
+        }
+    }
+
+    /**
+     * Gives up a probe whose outcome says nothing about the endpoint, so the next request probes
+     * again.
+     */
+    public synchronized void recordIgnored() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis() - openMillis;
+        }
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        openedAt = now;
+    }
+
+    private void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            successes[i] = 0;
+            failures[i] = 0;
+            bucketStarts[i] = 0;
+        }
+    }
+
+    private int currentBucket() {
+        long now = System.currentTimeMillis();
+        long bucketMillis = Math.max(1, windowMillis / BUCKETS);
+        long bucketStart = now - now % bucketMillis;
+        int index = (int) ((now / bucketMillis) % BUCKETS);
+        if (bucketStarts[index] != bucketStart) {
+            // The bucket belongs to an older round of the window, start it over
+            bucketStarts[index] = bucketStart;
+            successes[index] = 0;
+            failures[index] = 0;
+        }
+        return index;
+    }
+}
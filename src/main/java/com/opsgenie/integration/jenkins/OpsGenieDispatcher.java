@@ -0,0 +1,282 @@
+package com.opsgenie.integration.jenkins;
+
+import hudson.init.Terminator;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded background executor that delivers alerts off the build thread when asynchronous
+ * delivery is enabled in the global configuration.
+ * <p/>
+ * It also owns the timer thread of the plugin, which runs delayed tasks such as retries and held
+ * build start alerts. Those only hand work over to the workers, so that neither the timer of
+ * Jenkins nor that of the plugin ever waits for OpsGenie. Completion callbacks of the
+ * non-blocking transport run on threads of their own, never queued behind alerts where the
+ * rejection policy could drop them.
+ */
+public final class OpsGenieDispatcher {
+    public static final int DEFAULT_WORKERS = 4;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    private static final int CALLBACK_THREADS = 2;
+
+    private static final long SHUTDOWN_GRACE_SECONDS = 10;
+
+    private static final Logger logger = LoggerFactory.getLogger(OpsGenieDispatcher.class);
+
+    private static volatile OpsGenieDispatcher instance;
+
+    /**
+     * Set while a caller hands over a task that must not run on its own thread.
+     */
+    private static final ThreadLocal<Boolean> failFast = new ThreadLocal<>();
+
+    private static ScheduledThreadPoolExecutor scheduler;
+
+    private static ThreadPoolExecutor callbackExecutor;
+
+    /**
+     * Runs completion callbacks on the callback threads, never on the thread completing the
+     * delivery. Their queue is unbounded, as there is at most one callback per request in flight.
+     */
+    private static final Executor CALLBACKS = new Executor() {
+        @Override
+        public void execute(Runnable callback) {
+            callbackExecutor().execute(callback);
+        }
+    };
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * What to do with a new alert when all workers are busy and the queue is full.
+     */
+    public enum RejectionPolicy {
+        CALLER_RUNS("Deliver on the build thread"),
+        DISCARD("Drop the new alert"),
+        DISCARD_OLDEST("Drop the oldest queued alert");
+
+        private String displayName;
+
+        RejectionPolicy(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        public static RejectionPolicy fromName(String name) {
+            for (RejectionPolicy policy : RejectionPolicy.values()) {
+                if (policy.name().equals(name)) {
+                    return policy;
+                }
+            }
+
+            return CALLER_RUNS;
+        }
+    }
+
+    private OpsGenieDispatcher(int workers, int queueCapacity, RejectionPolicy rejectionPolicy) {
+        executor = new ThreadPoolExecutor(workers, workers, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new NamingThreadFactory(new DaemonThreadFactory(), "OpsGenie delivery"),
+                new Rejector(rejectionPolicy));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static OpsGenieDispatcher get() {
+        OpsGenieDispatcher current = instance;
+        if (current == null) {
+            synchronized (OpsGenieDispatcher.class) {
+                current = instance;
+                if (current == null) {
+                    current = new OpsGenieDispatcher(DEFAULT_WORKERS, DEFAULT_QUEUE_CAPACITY,
+                            RejectionPolicy.CALLER_RUNS);
+                    instance = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Replaces the dispatcher with one using the given settings. Alerts already queued on the
+     * previous dispatcher are still delivered by its workers before they stop.
+     */
+    public static synchronized void configure(int workers, int queueCapacity, RejectionPolicy rejectionPolicy) {
+        OpsGenieDispatcher previous = instance;
+        instance = new OpsGenieDispatcher(workers, queueCapacity, rejectionPolicy);
+        if (previous != null) {
+            previous.executor.shutdown();
+        }
+    }
+
+    /**
+     * Runs the task after the delay on the timer thread of the plugin. The task must not block,
+     * it holds up all other delayed tasks otherwise; deliveries are handed to
+     * {@link #tryExecute(Runnable)}.
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return scheduler().schedule(task, delay, unit);
+    }
+
+    /**
+     * Executor for completion callbacks of the non-blocking transport, which must not run on
+     * its I/O threads.
+     */
+    public static Executor callbacks() {
+        return CALLBACKS;
+    }
+
+    private static synchronized ThreadPoolExecutor callbackExecutor() {
+        if (callbackExecutor == null) {
+            callbackExecutor = new ThreadPoolExecutor(CALLBACK_THREADS, CALLBACK_THREADS, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "OpsGenie callback"));
+            callbackExecutor.allowCoreThreadTimeOut(true);
+        }
+        return callbackExecutor;
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor scheduler() {
+        if (scheduler == null) {
+            scheduler = new ScheduledThreadPoolExecutor(1,
+                    new NamingThreadFactory(new DaemonThreadFactory(), "OpsGenie timer"));
+            scheduler.setRemoveOnCancelPolicy(true);
+        }
+        return scheduler;
+    }
+
+    @Terminator
+    public static synchronized void shutdown() throws InterruptedException {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        if (callbackExecutor != null) {
+            callbackExecutor.shutdown();
+            callbackExecutor = null;
+        }
+        if (instance != null) {
+            instance.executor.shutdown();
+            if (!instance.executor.awaitTermination(SHUTDOWN_GRACE_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn(instance.executor.getQueue().size() + " OpsGenie alerts were not delivered before shutdown");
+            }
+            instance = null;
+        }
+    }
+
+    public <T> Future<T> submit(Callable<T> delivery) {
+        return executor.submit(delivery);
+    }
+
+    /**
+     * Runs the task on a delivery worker. Tasks dropped because the queue is full are cancelled
+     * if they are a {@link FutureTask}, so that their completion callback still fires.
+     */
+    public void execute(Runnable delivery) {
+        executor.execute(delivery);
+    }
+
+    /**
+     * Runs the task on a delivery worker, but never on the calling thread: when the queue is
+     * full and the rejection policy would deliver on the caller, the task is cancelled instead.
+     * For threads that must not block, such as timers and I/O threads.
+     *
+     * @return {@code false} if the task was dropped
+     */
+    public boolean tryExecute(Runnable delivery) {
+        failFast.set(Boolean.TRUE);
+        try {
+            executor.execute(delivery);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        } finally {
+            failFast.remove();
+        }
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveWorkers() {
+        return executor.getActiveCount();
+    }
+
+    private static class Rejector implements RejectedExecutionHandler {
+        private final RejectionPolicy policy;
+
+        Rejector(RejectionPolicy policy) {
+            this.policy = policy;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                OpsGenieDispatcher current = OpsGenieDispatcher.get();
+                if (current.executor != executor) {
+                    // The dispatcher was reconfigured in the meantime, hand over to the current one
+                    current.executor.execute(task);
+                } else {
+                    reject(task);
+                }
+                return;
+            }
+
+            switch (policy) {
+                case DISCARD:
+                    logger.warn("OpsGenie delivery queue is full, dropping alert");
+                    reject(task);
+                    break;
+                case DISCARD_OLDEST:
+                    Runnable oldest = executor.getQueue().poll();
+                    if (oldest != null) {
+                        logger.warn("OpsGenie delivery queue is full, dropping oldest alert");
+                        cancel(oldest);
+                    }
+                    executor.execute(task);
+                    break;
+                default:
+                    if (failFast.get() != null) {
+                        logger.warn("OpsGenie delivery queue is full, dropping alert instead of delivering on "
+                                + Thread.currentThread().getName());
+                        reject(task);
+                    } else {
+                        task.run();
+                    }
+            }
+        }
+
+        private void reject(Runnable task) {
+            cancel(task);
+            if (failFast.get() != null) {
+                throw new RejectedExecutionException("OpsGenie delivery queue is full");
+            }
+        }
+
+        private void cancel(Runnable task) {
+            // Lets anyone waiting on the future know that the alert will never be sent
+            if (task instanceof FutureTask) {
+                ((FutureTask<?>) task).cancel(false);
+            }
+        }
+    }
+}
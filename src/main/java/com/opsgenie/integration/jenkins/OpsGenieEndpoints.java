@@ -0,0 +1,165 @@
+package com.opsgenie.integration.jenkins;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plugin wide health of the OpsGenie endpoints alerts of the global API URL can be sent to, such
+ * as the US and the EU instance.
+ * <p/>
+ * Every request updates a moving average of the latency and the failure rate of its endpoint.
+ * Endpoints are tried from the healthiest to the least healthy one, a later configured endpoint
+ * only takes over once it is clearly faster than an earlier one. Failures fade out over time, so
+ * an endpoint that failed is tried again once it had time to recover.
+ */
+public final class OpsGenieEndpoints {
+    /**
+     * Weight of the latest request in the moving averages.
+     */
+    static final double SMOOTHING = 0.2;
+
+    /**
+     * Latency a failed request is counted as in addition to its own, in milliseconds.
+     */
+    static final long FAILURE_PENALTY = 10000;
+
+    /**
+     * Latency advantage an endpoint needs over the one configured before it, in milliseconds.
+     */
+    static final long PREFERENCE_MARGIN = 50;
+
+    /**
+     * Time in which the failure rate of an endpoint without requests fades to a third.
+     */
+    static final long RECOVERY_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    private static final ConcurrentMap<String, Health> healthByEndpoint = new ConcurrentHashMap<>();
+
+    private static volatile List<String> endpoints = Collections.emptyList();
+
+    private OpsGenieEndpoints() {
+    }
+
+    /**
+     * @param apiUrl     global API URL, preferred while it is as healthy as the others
+     * @param alternates further API URLs in order of preference, separated by commas or white
+     *                   space. Each must accept the same API key.
+     */
+    public static void configure(String apiUrl, String alternates) {
+        List<String> configured = new ArrayList<>();
+        configured.add(apiUrl);
+        for (String alternate : StringUtils.split(StringUtils.defaultString(alternates), ", \t\r\n")) {
+            if (indexOf(configured, alternate) < 0) {
+                configured.add(alternate);
+            }
+        }
+        endpoints = configured.size() > 1
+                ? Collections.unmodifiableList(configured)
+                : Collections.<String>emptyList();
+        healthByEndpoint.clear();
+    }
+
+    /**
+     * Returns the API URLs to try for alerts sent to the given one, healthiest first. Alerts for
+     * an API URL that is not configured globally, such as that of a single job, are only sent to
+     * it. The given API URL is returned as it is, not as it was configured.
+     */
+    public static List<String> order(String apiUrl) {
+        return order(apiUrl, System.currentTimeMillis());
+    }
+
+    static List<String> order(String apiUrl, long now) {
+        List<String> configured = endpoints;
+        int index = indexOf(configured, apiUrl);
+        if (index < 0) {
+            return Collections.singletonList(apiUrl);
+        }
+
+        final List<String> candidates = new ArrayList<>(configured);
+        candidates.set(index, apiUrl);
+        final double[] scores = new double[candidates.size()];
+        for (int i = 0; i < scores.length; i++) {
+            Health health = healthByEndpoint.get(normalize(candidates.get(i)));
+            scores[i] = (health != null ? health.score(now) : 0) + i * PREFERENCE_MARGIN;
+        }
+
+        List<String> ordered = new ArrayList<>(candidates);
+        Collections.sort(ordered, new Comparator<String>() {
+            @Override
+            public int compare(String first, String second) {
+                return Double.compare(scores[candidates.indexOf(first)], scores[candidates.indexOf(second)]);
+            }
+        });
+        return ordered;
+    }
+
+    /**
+     * Records the outcome of a request to the given API URL.
+     *
+     * @param failed whether the endpoint itself was in trouble, as opposed to refusing the alert
+     */
+    public static void record(String apiUrl, boolean failed, long nanos) {
+        record(apiUrl, failed, nanos, System.currentTimeMillis());
+    }
+
+    static void record(String apiUrl, boolean failed, long nanos, long now) {
+        if (indexOf(endpoints, apiUrl) < 0) {
+            return;
+        }
+
+        String key = normalize(apiUrl);
+        Health health = healthByEndpoint.get(key);
+        if (health == null) {
+            Health created = new Health();
+            health = healthByEndpoint.putIfAbsent(key, created);
+            if (health == null) {
+                health = created;
+            }
+        }
+        health.record(failed, TimeUnit.NANOSECONDS.toMillis(nanos), now);
+    }
+
+    private static int indexOf(List<String> apiUrls, String apiUrl) {
+        String normalized = normalize(apiUrl);
+        for (int i = 0; i < apiUrls.size(); i++) {
+            if (normalize(apiUrls.get(i)).equals(normalized)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String normalize(String apiUrl) {
+        return StringUtils.removeEnd(StringUtils.trimToEmpty(apiUrl), "/");
+    }
+
+    private static final class Health {
+        private double latency = -1;
+        private double failureRate;
+        private long lastRequest;
+
+        synchronized void record(boolean failed, long latencyMillis, long now) {
+            failureRate = SMOOTHING * (failed ? 1 : 0) + (1 - SMOOTHING) * failureRate(now);
+            latency = latency < 0 ? latencyMillis : SMOOTHING * latencyMillis + (1 - SMOOTHING) * latency;
+            lastRequest = now;
+        }
+
+        /**
+         * Expected time to deliver an alert through the endpoint, counting failures as slow.
+         */
+        synchronized double score(long now) {
+            return Math.max(0, latency) + failureRate(now) * FAILURE_PENALTY;
+        }
+
+        private double failureRate(long now) {
+            return failureRate * Math.exp(-(double) (now - lastRequest) / RECOVERY_MILLIS);
+        }
+    }
+}
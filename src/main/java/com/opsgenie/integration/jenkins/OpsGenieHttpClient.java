@@ -0,0 +1,179 @@
+package com.opsgenie.integration.jenkins;
+
+import hudson.init.Terminator;
+import jenkins.util.Timer;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plugin wide HTTP client used to deliver alerts to OpsGenie.
+ * <p/>
+ * All notifications share a single bounded connection pool so that keep-alive connections
+ * are reused between builds instead of doing a fresh TCP and TLS handshake for every alert.
+ * The client is rebuilt whenever the global configuration changes.
+ */
+public final class OpsGenieHttpClient {
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+    public static final int DEFAULT_SOCKET_TIMEOUT = 30000;
+    public static final int DEFAULT_CONNECTION_REQUEST_TIMEOUT = 5000;
+    public static final int DEFAULT_MAX_CONNECTIONS = 50;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+    public static final int DEFAULT_IDLE_CONNECTION_TIMEOUT = 60;
+
+    private static final Logger logger = LoggerFactory.getLogger(OpsGenieHttpClient.class);
+
+    private static volatile OpsGenieHttpClient instance;
+
+    private final CloseableHttpClient client;
+    private final RequestConfig requestConfig;
+    private final int socketTimeout;
+
+    private OpsGenieHttpClient(int maxConnections,
+                               int maxConnectionsPerRoute,
+                               int connectTimeout,
+                               int socketTimeout,
+                               int connectionRequestTimeout,
+                               int idleConnectionTimeout) {
+        PoolingHttpClientConnectionManager connectionManager = new TimedConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        // Stale keep-alive connections are checked before being leased again
+        connectionManager.setValidateAfterInactivity(1000);
+
+        this.socketTimeout = socketTimeout;
+        this.requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(socketTimeout)
+                .setConnectionRequestTimeout(connectionRequestTimeout)
+                .build();
+
+        this.client = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleConnectionTimeout, TimeUnit.SECONDS)
+                .useSystemProperties()
+                .build();
+    }
+
+    public static OpsGenieHttpClient get() {
+        OpsGenieHttpClient current = instance;
+        if (current == null) {
+            synchronized (OpsGenieHttpClient.class) {
+                current = instance;
+                if (current == null) {
+                    current = new OpsGenieHttpClient(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_ROUTE,
+                            DEFAULT_CONNECT_TIMEOUT, DEFAULT_SOCKET_TIMEOUT, DEFAULT_CONNECTION_REQUEST_TIMEOUT,
+                            DEFAULT_IDLE_CONNECTION_TIMEOUT);
+                    instance = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Replaces the shared client with one built from the given settings. The previous client is
+     * closed once requests that are still in flight on it had the chance to finish.
+     */
+    public static synchronized void configure(int maxConnections,
+                                              int maxConnectionsPerRoute,
+                                              int connectTimeout,
+                                              int socketTimeout,
+                                              int connectionRequestTimeout,
+                                              int idleConnectionTimeout) {
+        final OpsGenieHttpClient previous = instance;
+        instance = new OpsGenieHttpClient(maxConnections, maxConnectionsPerRoute, connectTimeout,
+                socketTimeout, connectionRequestTimeout, idleConnectionTimeout);
+
+        if (previous != null) {
+            Timer.get().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    previous.close();
+                }
+            }, previous.socketTimeout + DEFAULT_CONNECT_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Terminator
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.close();
+            instance = null;
+        }
+    }
+
+    /**
+     * Returns a builder pre-populated with the configured timeouts, so that per request settings
+     * such as the proxy do not reset them. Timeouts are lowered to the given budget if it is
+     * shorter.
+     */
+    public RequestConfig.Builder requestConfig(long budgetMillis) {
+        int budget = (int) Math.max(1, Math.min(budgetMillis, Integer.MAX_VALUE));
+        return RequestConfig.copy(requestConfig)
+                .setConnectTimeout(Math.min(requestConfig.getConnectTimeout(), budget))
+                .setSocketTimeout(Math.min(requestConfig.getSocketTimeout(), budget))
+                .setConnectionRequestTimeout(Math.min(requestConfig.getConnectionRequestTimeout(), budget));
+    }
+
+    /**
+     * Executes the request on the shared pool. Callers must close the returned response so that
+     * the connection is released back to the pool.
+     */
+    public CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+        return client.execute(request);
+    }
+
+    private void close() {
+        try {
+            client.close();
+        } catch (IOException e) {
+            logger.warn("Exception while closing OpsGenie http client: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records how long requests wait for a pooled connection, which tells an exhausted pool
+     * apart from a slow endpoint.
+     */
+    private static class TimedConnectionManager extends PoolingHttpClientConnectionManager {
+        @Override
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            final ConnectionRequest request = super.requestConnection(route, state);
+            return new ConnectionRequest() {
+                @Override
+                public HttpClientConnection get(long timeout, TimeUnit unit)
+                        throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                    long start = System.nanoTime();
+                    try {
+                        return request.get(timeout, unit);
+                    } finally {
+                        OpsGenieMetrics.get().recordConnectionLease(System.nanoTime() - start);
+                    }
+                }
+
+                @Override
+                public boolean cancel() {
+                    return request.cancel();
+                }
+            };
+        }
+    }
+}
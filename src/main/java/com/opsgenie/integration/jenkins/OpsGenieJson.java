@@ -0,0 +1,88 @@
+package com.opsgenie.integration.jenkins;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Shared, pre-configured JSON readers and writers. Jackson readers and writers are immutable
+ * and thread safe, so building them once avoids setting up a mapper for every alert.
+ */
+public final class OpsGenieJson {
+    private static final ObjectMapper mapper =
+            new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private static final JsonFactory factory = mapper.getFactory();
+
+    public static final ObjectWriter WRITER = mapper.writer();
+
+    public static final ObjectReader RESPONSE_READER =
+            mapper.reader(OpsGenieNotificationService.ResponseFromOpsGenie.class);
+
+    /**
+     * Buffers larger than this are not kept for reuse, so that one huge payload does not pin
+     * memory on every executor thread.
+     */
+    private static final int MAX_RETAINED_BUFFER = 256 * 1024;
+
+    private static final ThreadLocal<ByteArrayBuilder> buffers = new ThreadLocal<ByteArrayBuilder>() {
+        @Override
+        protected ByteArrayBuilder initialValue() {
+            return new ByteArrayBuilder(8 * 1024);
+        }
+    };
+
+    private OpsGenieJson() {
+    }
+
+    /**
+     * Streams the fields as a compact JSON object into a reusable per thread buffer and returns
+     * the UTF-8 encoded result.
+     */
+    public static byte[] writePayload(Map<String, ?> fields) throws IOException {
+        long start = System.nanoTime();
+        ByteArrayBuilder buffer = buffers.get();
+        buffer.reset();
+
+        JsonGenerator generator = factory.createGenerator(buffer, JsonEncoding.UTF8);
+        generator.writeStartObject();
+        for (Map.Entry<String, ?> field : fields.entrySet()) {
+            generator.writeFieldName(field.getKey());
+            writeValue(generator, field.getValue());
+        }
+        generator.writeEndObject();
+        generator.close();
+
+        byte[] payload = buffer.toByteArray();
+        if (payload.length > MAX_RETAINED_BUFFER) {
+            buffers.remove();
+        }
+        OpsGenieMetrics.get().recordSerialization(System.nanoTime() - start);
+        return payload;
+    }
+
+    private static void writeValue(JsonGenerator generator, Object value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof CharSequence) {
+            generator.writeString(value.toString());
+        } else if (value instanceof Collection) {
+            generator.writeStartArray();
+            for (Object element : (Collection<?>) value) {
+                writeValue(generator, element);
+            }
+            generator.writeEndArray();
+        } else {
+            WRITER.writeValue(generator, value);
+        }
+    }
+}
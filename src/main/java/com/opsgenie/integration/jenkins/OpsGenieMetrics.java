@@ -0,0 +1,237 @@
+package com.opsgenie.integration.jenkins;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms of alert delivery, rendered in the Prometheus text format by
+ * {@link OpsGenieMetricsAction}.
+ * <p/>
+ * Latencies are recorded in microseconds and exposed in seconds as summaries with a fixed set of
+ * quantiles. All values are kept since the controller started.
+ */
+public final class OpsGenieMetrics {
+    /**
+     * Endpoints beyond this many are accounted together, so a misconfigured job can not grow the
+     * number of series without bound.
+     */
+    static final int MAX_ENDPOINTS = 100;
+
+    private static final String OTHER_ENDPOINT = "other";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final OpsGenieMetrics instance = new OpsGenieMetrics();
+
+    private final LogLinearHistogram serialization = new LogLinearHistogram();
+    private final LogLinearHistogram connectionLease = new LogLinearHistogram();
+    private final LogLinearHistogram payloadSize = new LogLinearHistogram();
+    private final LogLinearHistogram requestSize = new LogLinearHistogram();
+    private final ConcurrentMap<String, LogLinearHistogram> roundTrips = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> responses = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> omissions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<OpsGenieWebhookSender.Outcome, AtomicLong> outcomes = new ConcurrentHashMap<>();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong shortCircuited = new AtomicLong();
+    private final AtomicLong failovers = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+
+    private OpsGenieMetrics() {
+        for (OpsGenieWebhookSender.Outcome outcome : OpsGenieWebhookSender.Outcome.values()) {
+            outcomes.put(outcome, new AtomicLong());
+        }
+    }
+
+    public static OpsGenieMetrics get() {
+        return instance;
+    }
+
+    public void recordSerialization(long nanos) {
+        serialization.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public void recordConnectionLease(long nanos) {
+        connectionLease.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public void recordPayloadSize(int bytes) {
+        payloadSize.record(bytes);
+    }
+
+    /**
+     * Records the size of a request body as sent, which is smaller than the payload if it was
+     * compressed.
+     */
+    public void recordRequestSize(long bytes) {
+        requestSize.record(bytes);
+    }
+
+    /**
+     * Records a single HTTP attempt. A status code of 0 means that no response was received.
+     */
+    public void recordAttempt(String endpoint, int statusCode, long nanos) {
+        roundTripOf(endpoint).record(TimeUnit.NANOSECONDS.toMicros(nanos));
+        counterOf(responses, statusCode > 0 ? Integer.toString(statusCode) : "error").incrementAndGet();
+    }
+
+    public void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    public void recordShortCircuit() {
+        shortCircuited.incrementAndGet();
+    }
+
+    public void recordFailover() {
+        failovers.incrementAndGet();
+    }
+
+    public void recordThrottled() {
+        throttled.incrementAndGet();
+    }
+
+    /**
+     * Records a {@link PayloadContributor} left out of an alert.
+     */
+    public void recordOmission(String contributor) {
+        counterOf(omissions, contributor).incrementAndGet();
+    }
+
+    public void recordOutcome(OpsGenieWebhookSender.Outcome outcome) {
+        outcomes.get(outcome).incrementAndGet();
+    }
+
+    private LogLinearHistogram roundTripOf(String endpoint) {
+        LogLinearHistogram histogram = roundTrips.get(endpoint);
+        if (histogram != null) {
+            return histogram;
+        }
+        if (roundTrips.size() >= MAX_ENDPOINTS) {
+            endpoint = OTHER_ENDPOINT;
+        }
+        LogLinearHistogram created = new LogLinearHistogram();
+        histogram = roundTrips.putIfAbsent(endpoint, created);
+        return histogram != null ? histogram : created;
+    }
+
+    private static <K> AtomicLong counterOf(ConcurrentMap<K, AtomicLong> counters, K key) {
+        AtomicLong counter = counters.get(key);
+        if (counter != null) {
+            return counter;
+        }
+        AtomicLong created = new AtomicLong();
+        counter = counters.putIfAbsent(key, created);
+        return counter != null ? counter : created;
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format, version 0.0.4.
+     */
+    public void writePrometheus(Writer out) throws IOException {
+        writeSummary(out, "opsgenie_serialization_seconds", "Time to serialize an alert payload",
+                singleSeries(serialization), 1e-6);
+        writeSummary(out, "opsgenie_connection_lease_seconds", "Time to lease a connection from the pool",
+                singleSeries(connectionLease), 1e-6);
+        writeSummary(out, "opsgenie_request_duration_seconds", "Round trip time of an HTTP attempt",
+                labelled("endpoint", roundTrips), 1e-6);
+        writeSummary(out, "opsgenie_payload_size_bytes", "Size of a sent alert payload",
+                singleSeries(payloadSize), 1);
+        writeSummary(out, "opsgenie_request_size_bytes", "Size of a sent request body after compression",
+                singleSeries(requestSize), 1);
+
+        writeHeader(out, "opsgenie_responses_total", "HTTP attempts by response status", "counter");
+        for (Map.Entry<String, AtomicLong> response : new TreeMap<>(responses).entrySet()) {
+            writeSample(out, "opsgenie_responses_total", label("status", response.getKey()), response.getValue().get());
+        }
+        writeHeader(out, "opsgenie_deliveries_total", "Sent alerts by outcome", "counter");
+        for (Map.Entry<OpsGenieWebhookSender.Outcome, AtomicLong> outcome : new TreeMap<>(outcomes).entrySet()) {
+            writeSample(out, "opsgenie_deliveries_total",
+                    label("outcome", outcome.getKey().name().toLowerCase(Locale.ENGLISH)), outcome.getValue().get());
+        }
+        writeHeader(out, "opsgenie_payload_omissions_total", "Payload contributors left out of an alert",
+                "counter");
+        for (Map.Entry<String, AtomicLong> omission : new TreeMap<>(omissions).entrySet()) {
+            writeSample(out, "opsgenie_payload_omissions_total", label("contributor", omission.getKey()),
+                    omission.getValue().get());
+        }
+        writeHeader(out, "opsgenie_retries_total", "Attempts that were retried", "counter");
+        writeSample(out, "opsgenie_retries_total", "", retries.get());
+        writeHeader(out, "opsgenie_short_circuited_total", "Alerts not sent because the circuit breaker was open",
+                "counter");
+        writeSample(out, "opsgenie_short_circuited_total", "", shortCircuited.get());
+        writeHeader(out, "opsgenie_failovers_total", "Attempts sent on to another endpoint after one failed",
+                "counter");
+        writeSample(out, "opsgenie_failovers_total", "", failovers.get());
+        writeHeader(out, "opsgenie_throttled_total", "Alerts not sent because the API key request limit was exhausted",
+                "counter");
+        writeSample(out, "opsgenie_throttled_total", "", throttled.get());
+
+        OpsGenieDispatcher dispatcher = OpsGenieDispatcher.get();
+        writeHeader(out, "opsgenie_delivery_queue_depth", "Alerts waiting for a delivery worker", "gauge");
+        writeSample(out, "opsgenie_delivery_queue_depth", "", dispatcher.getQueueDepth());
+        writeHeader(out, "opsgenie_delivery_active_workers", "Delivery workers sending an alert", "gauge");
+        writeSample(out, "opsgenie_delivery_active_workers", "", dispatcher.getActiveWorkers());
+
+        OpsGenieOutbox outbox = OpsGenieOutbox.get();
+        if (outbox != null) {
+            writeHeader(out, "opsgenie_outbox_pending", "Journaled alerts waiting to be sent", "gauge");
+            writeSample(out, "opsgenie_outbox_pending", "", outbox.getPendingCount());
+        }
+    }
+
+    private static Map<String, LogLinearHistogram> singleSeries(LogLinearHistogram histogram) {
+        Map<String, LogLinearHistogram> series = new TreeMap<>();
+        series.put("", histogram);
+        return series;
+    }
+
+    private static Map<String, LogLinearHistogram> labelled(String name, Map<String, LogLinearHistogram> histograms) {
+        Map<String, LogLinearHistogram> series = new TreeMap<>();
+        for (Map.Entry<String, LogLinearHistogram> histogram : histograms.entrySet()) {
+            series.put(label(name, histogram.getKey()), histogram.getValue());
+        }
+        return series;
+    }
+
+    private static void writeSummary(Writer out, String name, String help, Map<String, LogLinearHistogram> series,
+                                     double scale) throws IOException {
+        writeHeader(out, name, help, "summary");
+        for (Map.Entry<String, LogLinearHistogram> entry : series.entrySet()) {
+            String labels = entry.getKey();
+            LogLinearHistogram histogram = entry.getValue();
+            for (double quantile : QUANTILES) {
+                String quantileLabel = label("quantile", Double.toString(quantile));
+                writeSample(out, name, labels.isEmpty() ? quantileLabel : labels + "," + quantileLabel,
+                        histogram.getValueAtQuantile(quantile) * scale);
+            }
+            writeSample(out, name + "_sum", labels, histogram.getSum() * scale);
+            writeSample(out, name + "_count", labels, histogram.getCount());
+        }
+    }
+
+    private static void writeHeader(Writer out, String name, String help, String type) throws IOException {
+        out.write("# HELP " + name + " " + help + "\n");
+        out.write("# TYPE " + name + " " + type + "\n");
+    }
+
+    private static void writeSample(Writer out, String name, String labels, double value) throws IOException {
+        out.write(name);
+        if (!labels.isEmpty()) {
+            out.write("{" + labels + "}");
+        }
+        out.write(" ");
+        out.write(value == Math.rint(value) && !Double.isInfinite(value)
+                ? Long.toString((long) value) : Double.toString(value));
+        out.write("\n");
+    }
+
+    private static String label(String name, String value) {
+        return name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+}
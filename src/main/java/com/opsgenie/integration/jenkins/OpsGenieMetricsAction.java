@@ -0,0 +1,43 @@
+package com.opsgenie.integration.jenkins;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Exposes {@link OpsGenieMetrics} at {@code <jenkins>/opsgenie/metrics} in the Prometheus text
+ * format. Endpoints appear in the labels, so reading the metrics requires administer permission.
+ */
+@Extension
+public class OpsGenieMetricsAction implements RootAction {
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "OpsGenie Metrics";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "opsgenie";
+    }
+
+    public void doMetrics(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+
+        rsp.setContentType("text/plain; version=0.0.4; charset=utf-8");
+        rsp.setHeader("Cache-Control", "no-cache");
+        Writer out = rsp.getWriter();
+        OpsGenieMetrics.get().writePrometheus(out);
+        out.flush();
+    }
+}
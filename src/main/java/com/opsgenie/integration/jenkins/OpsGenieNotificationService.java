@@ -2,31 +2,28 @@ package com.opsgenie.integration.jenkins;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import hudson.ProxyConfiguration;
+import com.google.common.util.concurrent.ExecutionList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import hudson.Util;
 import hudson.model.*;
-import hudson.scm.ChangeLogSet;
-import hudson.tasks.test.AbstractTestResultAction;
-import hudson.tasks.test.TestResult;
-import jenkins.model.Jenkins;
-import jenkins.model.JenkinsLocationConfiguration;
+import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.lang.StringUtils;
-import org.apache.http.HttpHost;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.util.EntityUtils;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
-import java.net.URI;
 import java.util.*;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @author Omer Ozkan
@@ -35,110 +32,100 @@ import java.util.regex.Pattern;
  */
 
 public class OpsGenieNotificationService {
-    private final static String INTEGRATION_PATH = "/v1/json/jenkins";
+    static final int MAX_ALIAS_LENGTH = 512;
 
     private final org.slf4j.Logger logger = LoggerFactory.getLogger(OpsGenieNotificationService.class);
 
     private Run<?, ?> build;
-    private Job<?, ?> project;
     private AlertProperties alertProperties;
     private PrintStream consoleOutputLogger;
     private Map<String, Object> requestPayload;
-    private ObjectMapper mapper;
     private OpsGenieNotificationRequest request;
+    private DeliveryProfile profile;
+    /**
+     * Result the transition filter recorded as the last state of the job for this alert.
+     */
+    private volatile Result recordedResult;
 
     public OpsGenieNotificationService(OpsGenieNotificationRequest request) {
         build = request.getBuild();
-        project = build.getParent();
 
         this.request = request;
-        mapper = new ObjectMapper();
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
         requestPayload = new HashMap<>();
 
         alertProperties = request.getAlertProperties();
+        // Captured up front, which also tells the routing rules that the build alerts on its own
+        OpsGenieBuildFieldsAction.of(build);
+        profile = DeliveryProfile.get(request.getApiUrl(), request.getApiKey(),
+                alertProperties.getTags(), alertProperties.getTeams());
         consoleOutputLogger = request.getListener().getLogger();
     }
 
-    private boolean checkResponse(String res) {
-        try {
-            ResponseFromOpsGenie response = mapper.readValue(res, ResponseFromOpsGenie.class);
-            if (StringUtils.isEmpty(response.error)) {
-                consoleOutputLogger.println("Sending job data to OpsGenie is done");
-                return true;
-            } else {
-                consoleOutputLogger.println("Response status is failed");
-                logger.error("Response status is failed");
-                return false;
-            }
-        } catch (Exception e) {
-            e.printStackTrace(consoleOutputLogger);
-            logger.error("Exception while checking response" + e.getMessage());
+    protected boolean sendPreBuildPayload() {
+        if (BuildStartDebouncer.get().isEnabled()) {
+            return holdPreBuildPayload(createPreBuildPayload(), alertProperties.getBuildStartPriority());
         }
-        return !res.isEmpty();
+        return deliver(createPreBuildPayload(), alertProperties.getBuildStartPriority());
     }
 
-    private String sendWebhookToOpsGenie(String data) {
-        try {
-            String apiUrl = this.request.getApiUrl();
-            String apiKey = this.request.getApiKey();
-
-
-            URI inputURI = new URI(apiUrl);
-            String scheme = "https";
-            String host = apiUrl;
-            if (inputURI.isAbsolute()) {
-                scheme = inputURI.getScheme();
-                host = inputURI.getHost();
-            }
+    /**
+     * Delivers the pre build payload in the background and waits for it at most the given time.
+     * Returns {@code true} if it was delivered or is still being delivered when time runs out.
+     */
+    protected boolean sendPreBuildPayload(long budgetMillis) {
+        if (BuildStartDebouncer.get().isEnabled()) {
+            return holdPreBuildPayload(createPreBuildPayload(), alertProperties.getBuildStartPriority());
+        }
+        return deliverWithin(createPreBuildPayload(), alertProperties.getBuildStartPriority(), budgetMillis);
+    }
 
-            URI uri = new URIBuilder()
-                    .setScheme(scheme)
-                    .setHost(host)
-                    .setPath(INTEGRATION_PATH)
-                    .addParameter("apiKey", apiKey)
-                    .build();
-
-            HttpClient client = HttpClientBuilder.create().build();
-            HttpPost post = new HttpPost(uri);
-            StringEntity params = new StringEntity(data);
-            post.addHeader("content-type", "application/x-www-form-urlencoded");
-            post.setEntity(params);
-
-            if (Jenkins.getInstance() != null && Jenkins.getInstance().proxy != null) {
-                // A proxy is configured, so we will use it for this request as well.
-                ProxyConfiguration proxy = Jenkins.getInstance().proxy;
-
-                // Check if the host of opsgenie is excluded from the proxy.
-                Boolean isHostExcludedFromProxy = false;
-                for (Pattern pattern: proxy.getNoProxyHostPatterns()) {
-                    if (pattern.matcher(host).matches()) {
-                        isHostExcludedFromProxy = true;
-                    }
-                }
+    /**
+     * Captures the pre build payload on the calling thread and hands it to the background
+     * dispatcher for delivery.
+     */
+    protected ListenableFuture<Boolean> sendPreBuildPayloadAsync() {
+        if (BuildStartDebouncer.get().isEnabled()) {
+            return Futures.immediateFuture(
+                    holdPreBuildPayload(createPreBuildPayload(), alertProperties.getBuildStartPriority()));
+        }
+        return dispatch(createPreBuildPayload(), alertProperties.getBuildStartPriority());
+    }
 
-                if (!isHostExcludedFromProxy) {
-                    HttpHost proxyHost = new HttpHost(proxy.name, proxy.port);
-                    RequestConfig config = RequestConfig.custom()
-                        .setProxy(proxyHost)
-                        .build();
-                    post.setConfig(config);
+    /**
+     * Leaves the pre build payload to the {@link BuildStartDebouncer}, which sends it only if the
+     * build is still running after the grace period.
+     */
+    private boolean holdPreBuildPayload(final byte[] payload, final AlertPriority priority) {
+        consoleOutputLogger.println("Build start is sent to OpsGenie if the build still runs in "
+                + BuildStartDebouncer.get().getGracePeriod() + " s");
+        // The build may be long gone when the alert is sent, so the outcome is only logged
+        consoleOutputLogger = new PrintStream(new NullOutputStream());
+        BuildStartDebouncer.get().hold(debounceKey(), new Runnable() {
+            @Override
+            public void run() {
+                // Runs on the timer thread, which must not deliver when the queue is full
+                if (trySubmit(payload, priority) == null
+                        && !OpsGenieOutbox.defer(profile.getApiUrl(), profile.getApiKey(), payload)) {
+                    logger.warn("OpsGenie delivery queue is full, dropping build start alert of "
+                            + build.getFullDisplayName());
                 }
             }
+        });
+        return true;
+    }
 
-            consoleOutputLogger.println("Sending job data to OpsGenie...");
-            HttpResponse response = client.execute(post);
-
-            return EntityUtils.toString(response.getEntity());
-        } catch (Exception e) {
-            e.printStackTrace(consoleOutputLogger);
-            logger.error("Exception while sending webhook: " + e.getMessage());
+    private void cancelHeldPreBuildPayload() {
+        if (BuildStartDebouncer.get().cancel(debounceKey())) {
+            consoleOutputLogger.println("Build finished before its start was sent to OpsGenie, only sending its result");
         }
-        return "";
     }
 
-    protected boolean sendPreBuildPayload() {
+    private String debounceKey() {
+        return build.getParent().getFullName() + '#' + build.getNumber() + '\n'
+                + request.getApiUrl() + '\n' + request.getApiKey();
+    }
 
+    private byte[] createPreBuildPayload() {
         populateRequestPayloadWithMandatoryFields();
 
         requestPayload.put("isPreBuild", "true");
@@ -147,143 +134,256 @@ public class OpsGenieNotificationService {
             requestPayload.put("priority", alertProperties.getBuildStartPriority().getValue());
         }
 
-        String payload = "";
+        byte[] payload = new byte[0];
         try {
-            payload = this.mapper.writerWithDefaultPrettyPrinter().writeValueAsString(requestPayload);
+            payload = OpsGenieJson.writePayload(requestPayload);
         } catch (Exception e) {
             e.printStackTrace(consoleOutputLogger);
             logger.error("Exception while serializing pre request:" + e.getMessage());
         }
-        String response = sendWebhookToOpsGenie(payload);
-
-        return checkResponse(response);
+        return payload;
     }
 
-    private String formatCommitList(ChangeLogSet<? extends ChangeLogSet.Entry> changeLogSet) {
-        StringBuilder commitListBuilder = new StringBuilder();
-        if (changeLogSet.isEmptySet()) {
-            commitListBuilder.append("No changes.\n\n");
+    public boolean sendAfterBuildData() {
+        if (isSuppressed()) {
+            return true;
         }
+        return deliver(createAfterBuildPayload(), alertProperties.getPriority());
+    }
 
-        for (ChangeLogSet.Entry entry : changeLogSet) {
-            commitListBuilder
-                    .append(entry.getMsg())
-                    .append(" - <strong>")
-                    .append(entry.getAuthor().getDisplayName())
-                    .append("</strong><br>\n");
+    /**
+     * Delivers the post build payload in the background and waits for it at most the given time.
+     * Returns {@code true} if it was delivered or is still being delivered when time runs out.
+     */
+    public boolean sendAfterBuildData(long budgetMillis) {
+        if (isSuppressed()) {
+            return true;
         }
-        return commitListBuilder.toString();
+        return deliverWithin(createAfterBuildPayload(), alertProperties.getPriority(), budgetMillis);
     }
 
-    private String formatFailedTests(List<? extends TestResult> failedTests) {
-        StringBuilder testResultBuilder = new StringBuilder();
-        for (TestResult failedTest : failedTests) {
-            testResultBuilder
-                    .append(String.format("<strong>%s</strong>%n", failedTest.getFullName()));
+    /**
+     * Captures the post build payload on the calling thread and hands it to the background
+     * dispatcher for delivery. The returned future completes with the outcome of the delivery.
+     */
+    public ListenableFuture<Boolean> sendAfterBuildDataAsync() {
+        if (isSuppressed()) {
+            return Futures.immediateFuture(true);
+        }
+        return dispatch(createAfterBuildPayload(), alertProperties.getPriority());
+    }
 
-            if (StringUtils.isNotBlank(failedTest.getErrorDetails())) {
-                testResultBuilder.append(failedTest.getErrorDetails());
-            }
+    private boolean isSuppressed() {
+        // Whether or not the result is sent, a held build start alert is outdated now
+        cancelHeldPreBuildPayload();
+        return !passesTransitionFilter() || joinsStormDigest();
+    }
 
-            testResultBuilder.append("\n\n");
+    private boolean passesTransitionFilter() {
+        Result status = build.getResult() != null ? build.getResult() : Result.SUCCESS;
+        AlertTransitionFilter.Decision decision =
+                AlertTransitionFilter.get().decide(build, status, alertProperties.isTransitionsOnly());
+
+        switch (decision) {
+            case SUPPRESS_UNCHANGED:
+                consoleOutputLogger.println("Build status did not change, not sending job data to OpsGenie");
+                break;
+            case SUPPRESS_FLAPPING:
+                consoleOutputLogger.println("Job is flapping, not sending job data to OpsGenie");
+                break;
+            case SEND_FLAPPING:
+                requestPayload.put("flapping", "true");
+                break;
+            default:
+        }
+        if (decision.isSend()) {
+            recordedResult = status;
         }
-        return testResultBuilder.toString();
+        return decision.isSend();
     }
 
-    private String formatBuildVariables() {
-        StringBuilder buildVariablesBuilder = new StringBuilder();
-        if (build instanceof AbstractBuild) {
-            Map<String, String> buildVariables = ((AbstractBuild<?, ?>) build).getBuildVariables();
-            for (Map.Entry<String, String> entry : buildVariables.entrySet()) {
-                buildVariablesBuilder.append(entry.getKey()).append(" -> ").append(entry.getValue()).append("\n");
-            }
+    private boolean joinsStormDigest() {
+        Result status = build.getResult() != null ? build.getResult() : Result.SUCCESS;
+        if (AlertStormAggregator.get().offer(request, status)) {
+            consoleOutputLogger.println("Many builds are failing, job data is sent to OpsGenie in a digest");
+            return true;
         }
-        return buildVariablesBuilder.toString();
+        return false;
     }
 
-    public boolean sendAfterBuildData() {
+    private byte[] createAfterBuildPayload() {
         populateRequestPayloadWithMandatoryFields();
 
-        if (build instanceof AbstractBuild) {
-            if (build.getResult() == Result.FAILURE || build.getResult() == Result.UNSTABLE) {
-                Set<User> culprits = ((AbstractBuild<?, ?>) build).getCulprits();
-                if (!culprits.isEmpty()) {
-                    requestPayload.put("culprits", formatCulprits(culprits));
-                }
-            }
+        List<String> omitted = PayloadEnricher.get().enrich(requestPayload, build, alertProperties,
+                PayloadContributor.all());
+        if (!omitted.isEmpty()) {
+            String names = StringUtils.join(omitted, ",");
+            consoleOutputLogger.println("Left out of the OpsGenie alert as they failed or did not finish in time: " + names);
+            requestPayload.put("omittedContributors", names);
         }
 
-        StringBuilder descriptionBuilder = new StringBuilder();
-        AbstractTestResultAction<?> testResult = build.getAction(AbstractTestResultAction.class);
-        if (testResult != null) {
-            String passedTestCount = Integer.toString(testResult.getTotalCount() - testResult.getFailCount() - testResult.getSkipCount());
-            requestPayload.put("passedTestCount", passedTestCount);
-            String failedTestCount = Integer.toString(testResult.getFailCount());
-            requestPayload.put("failedTestCount", failedTestCount);
-            String skippedTestCount = Integer.toString(testResult.getSkipCount());
-            requestPayload.put("skippedTestCount", skippedTestCount);
-
-            if (build.getResult() == Result.UNSTABLE || build.getResult() == Result.FAILURE) {
-                descriptionBuilder.append(formatFailedTests(testResult.getFailedTests()));
-                requestPayload.put("failedTests", descriptionBuilder);
-            }
-        }
-
-        if (build instanceof AbstractBuild) {
-            requestPayload.put("commitList", formatCommitList(((AbstractBuild<?, ?>) build).getChangeSet()));
-        }
-        Run<?, ?> previousBuild = build.getPreviousBuild();
+        JobStatusCache.BuildSummary previousBuild = JobStatusCache.get().getPrevious(build);
         if (previousBuild != null) {
             String previousDisplayName = previousBuild.getDisplayName();
             requestPayload.put("previousDisplayName", previousDisplayName);
-            String previousTime = previousBuild.getTimestamp().getTime().toString();
+            String previousTime = previousBuild.getTime().toString();
             requestPayload.put("previousTime", previousTime);
             Result previousResult = previousBuild.getResult();
             if (previousResult != null) {
                 requestPayload.put("previousStatus", previousResult.toString());
             }
-            Job<?, ?> previousProject = previousBuild.getParent();
-            if (previousProject != null) {
-                String previousProjectName = previousProject.getName();
-                requestPayload.put("previousProjectName", previousProjectName);
-            }
+            String previousProjectName = previousBuild.getProjectName();
+            requestPayload.put("previousProjectName", previousProjectName);
         }
 
         requestPayload.put("isPreBuild", "false");
         requestPayload.put("duration", build.getDurationString());
-        requestPayload.put("params", formatBuildVariables());
 
         if(alertProperties.getPriority() != null) {
             requestPayload.put("priority", alertProperties.getPriority().getValue());
         }
 
-        String payload = "";
+        byte[] payload = new byte[0];
         try {
-            payload = this.mapper.writerWithDefaultPrettyPrinter().writeValueAsString(requestPayload);
+            payload = OpsGenieJson.writePayload(requestPayload);
         } catch (Exception e) {
             e.printStackTrace(consoleOutputLogger);
             logger.error("Exception while serializing post request :" + e.getMessage());
         }
+        return payload;
+    }
 
-        String response = sendWebhookToOpsGenie(payload);
-        return checkResponse(response);
+    private boolean deliver(byte[] payload, AlertPriority priority) {
+        boolean delivered = createSender(priority).deliver(payload);
+        onDelivered(delivered);
+        return delivered;
     }
 
+    private OpsGenieWebhookSender createSender(AlertPriority priority) {
+        return new OpsGenieWebhookSender(profile, priority, consoleOutputLogger);
+    }
 
-    private String formatCulprits(Set<User> culprits) {
-        StringBuilder culpritsBuilder = new StringBuilder();
-        for (User culprit : culprits) {
-            culpritsBuilder.append(culprit.getFullName()).append(",");
+    private ListenableFuture<Boolean> dispatch(byte[] payload, AlertPriority priority) {
+        consoleOutputLogger.println("Queued job data for asynchronous delivery to OpsGenie");
+        // The build log may be closed by the time the alert is sent, so the outcome is only logged
+        consoleOutputLogger = new PrintStream(new NullOutputStream());
+        return submit(payload, priority);
+    }
+
+    private boolean deliverWithin(byte[] payload, AlertPriority priority, long budgetMillis) {
+        PrintStream buildLog = consoleOutputLogger;
+        DetachableOutputStream console = new DetachableOutputStream(buildLog);
+        consoleOutputLogger = new PrintStream(console, true);
+
+        Future<Boolean> delivery = trySubmit(payload, priority);
+        if (delivery == null) {
+            // Delivering on the build thread could take far longer than the budget
+            if (OpsGenieOutbox.defer(profile.getApiUrl(), profile.getApiKey(), payload)) {
+                buildLog.println("OpsGenie delivery queue is full, job data is sent from the outbox later");
+                return true;
+            }
+            buildLog.println("OpsGenie delivery queue is full, job data could not be sent to OpsGenie");
+            return false;
         }
-        return culpritsBuilder.toString();
+        try {
+            return delivery.get(budgetMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            console.detach();
+            buildLog.println("OpsGenie did not respond within " + budgetMillis
+                    + " ms, job data keeps being sent in the background");
+            return true;
+        } catch (InterruptedException e) {
+            console.detach();
+            Thread.currentThread().interrupt();
+            return true;
+        } catch (CancellationException | ExecutionException e) {
+            buildLog.println("Job data could not be sent to OpsGenie");
+            logger.error("Exception while waiting for delivery: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private ListenableFuture<Boolean> submit(final byte[] payload, final AlertPriority priority) {
+        if (OpsGenieAsyncHttpClient.get() != null) {
+            // Multiplexed over the I/O threads of the non-blocking client, no worker has to wait
+            return deliverAsync(payload, priority);
+        }
+        Delivery delivery = createDelivery(payload, priority);
+        OpsGenieDispatcher.get().execute(delivery);
+        return delivery;
+    }
+
+    /**
+     * Same as {@link #submit(byte[], AlertPriority)}, but never delivers on the calling thread.
+     * Returns {@code null} if the delivery queue is full.
+     */
+    private ListenableFuture<Boolean> trySubmit(final byte[] payload, final AlertPriority priority) {
+        if (OpsGenieAsyncHttpClient.get() != null) {
+            return deliverAsync(payload, priority);
+        }
+        Delivery delivery = createDelivery(payload, priority);
+        return OpsGenieDispatcher.get().tryExecute(delivery) ? delivery : null;
     }
 
+    private Delivery createDelivery(final byte[] payload, final AlertPriority priority) {
+        return new Delivery(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return deliver(payload, priority);
+            }
+        }) {
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    // Dropped from the full queue. Should it be journaled in the outbox instead,
+                    // the next alert of the job is merely not suppressed.
+                    onDelivered(false);
+                }
+                super.done();
+            }
+        };
+    }
+
+    private ListenableFuture<Boolean> deliverAsync(byte[] payload, AlertPriority priority) {
+        final ListenableFuture<Boolean> delivery = createSender(priority).deliverAsync(payload);
+        delivery.addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    onDelivered(delivery.get());
+                } catch (InterruptedException | ExecutionException | CancellationException e) {
+                    onDelivered(false);
+                }
+            }
+        }, MoreExecutors.sameThreadExecutor());
+        return delivery;
+    }
+
+    /**
+     * Forgets the result recorded by the transition filter if the alert for it was lost, so that
+     * it does not suppress the next alert for the same result.
+     */
+    private void onDelivered(boolean delivered) {
+        Result recorded = recordedResult;
+        if (!delivered && recorded != null) {
+            AlertTransitionFilter.get().forget(build, recorded);
+        }
+    }
+
+
     private void populateRequestPayloadWithMandatoryFields() {
-        String time = Objects.toString(build.getTimestamp().getTime());
-        requestPayload.put("time", time);
+        populateRequestPayloadWithMandatoryFields(requestPayload, build, profile);
+    }
 
-        String projectName = project.getName();
-        requestPayload.put("projectName", projectName);
+    /**
+     * Kept free of Jenkins lookups so that it can be benchmarked without a running Jenkins.
+     */
+    static void populateRequestPayloadWithMandatoryFields(Map<String, Object> requestPayload,
+                                                          Run<?, ?> build,
+                                                          DeliveryProfile profile) {
+        OpsGenieBuildFieldsAction fields = OpsGenieBuildFieldsAction.of(build);
+        requestPayload.put("time", fields.getTime());
+        requestPayload.put("projectName", fields.getProjectName());
 
         String displayName = build.getDisplayName();
         requestPayload.put("displayName", displayName);
@@ -295,20 +395,23 @@ public class OpsGenieNotificationService {
         }
         requestPayload.put("status", Objects.toString(status));
 
-        String url = build.getUrl();
-        requestPayload.put("url", JenkinsLocationConfiguration.get().getUrl() + url);
-
-        List<String> tags = splitStringWithComma(alertProperties.getTags());
-        requestPayload.put("tags", tags);
-
-        List<String> teams = splitStringWithComma(alertProperties.getTeams());
-        requestPayload.put("teams", teams);
+        String url = profile.getRootUrl() + fields.getUrl();
+        requestPayload.put("url", url);
+        // Shared by the pre and post build alerts, so that OpsGenie updates one alert
+        requestPayload.put("alias", alias(url));
+        requestPayload.put("tags", profile.getTags());
+        requestPayload.put("teams", profile.getTeams());
+        requestPayload.put("startTimeInMillis", fields.getStartTimeInMillis());
+    }
 
-        String startTime = Objects.toString(build.getStartTimeInMillis());
-        requestPayload.put("startTimeInMillis", startTime);
+    /**
+     * OpsGenie limits aliases to 512 characters, longer build URLs are replaced by their digest.
+     */
+    static String alias(String url) {
+        return url.length() <= MAX_ALIAS_LENGTH ? url : Util.getDigestOf(url);
     }
 
-    private List<String> splitStringWithComma(String unparsed) {
+    static List<String> splitStringWithComma(String unparsed) {
         if (unparsed == null) {
             return Collections.emptyList();
         }
@@ -322,6 +425,37 @@ public class OpsGenieNotificationService {
         return tokens;
     }
 
+    /**
+     * Forwards to the build log until detached, so that a delivery that outlives the wait of the
+     * build does not write to a log that may be closed already.
+     */
+    private static final class DetachableOutputStream extends OutputStream {
+        private volatile OutputStream target;
+
+        DetachableOutputStream(OutputStream target) {
+            this.target = target;
+        }
+
+        void detach() {
+            target = new NullOutputStream();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target.flush();
+        }
+    }
+
     @JsonIgnoreProperties(ignoreUnknown = true)
     public static class ResponseFromOpsGenie {
 
@@ -336,4 +470,26 @@ public class OpsGenieNotificationService {
             this.error = error;
         }
     }
+
+    /**
+     * Delivery on the background dispatcher whose outcome can be listened for, so that nobody
+     * has to wait on it.
+     */
+    private static class Delivery extends FutureTask<Boolean> implements ListenableFuture<Boolean> {
+        private final ExecutionList listeners = new ExecutionList();
+
+        Delivery(Callable<Boolean> callable) {
+            super(callable);
+        }
+
+        @Override
+        public void addListener(Runnable listener, Executor executor) {
+            listeners.add(listener, executor);
+        }
+
+        @Override
+        protected void done() {
+            listeners.execute();
+        }
+    }
 }
@@ -9,14 +9,21 @@ import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Notifier;
 import hudson.tasks.Publisher;
 
+import com.opsgenie.integration.jenkins.matrix.MatrixAlerts;
+import com.opsgenie.integration.jenkins.routing.RoutingIndex;
+import com.opsgenie.integration.jenkins.routing.RoutingRule;
+
 import net.sf.json.JSONObject;
 
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.export.Exported;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author Omer Ozkan
@@ -28,6 +35,11 @@ public class OpsGenieNotifier extends Notifier {
 
     private static final String DEFAULT_API_URL = "https://api.opsgenie.com/";
 
+    /**
+     * Milliseconds a build waits for its alert before leaving it to background delivery.
+     */
+    public static final int DEFAULT_DELIVERY_BUDGET = 10000;
+
 
     private boolean enable = true;
     private String tags;
@@ -38,6 +50,9 @@ public class OpsGenieNotifier extends Notifier {
     private String teams;
     private AlertPriority alertPriority;
     private AlertPriority notifyBuildStartPriority;
+    private boolean newFailuresOnly;
+    private boolean transitionsOnly;
+    private boolean aggregateMatrix;
 
     @DataBoundConstructor
     public OpsGenieNotifier(boolean enable,
@@ -58,6 +73,21 @@ public class OpsGenieNotifier extends Notifier {
         this.notifyBuildStartPriority = AlertPriority.fromDisplayName(buildStartAlertPriority);
     }
 
+    @DataBoundSetter
+    public void setNewFailuresOnly(boolean newFailuresOnly) {
+        this.newFailuresOnly = newFailuresOnly;
+    }
+
+    @DataBoundSetter
+    public void setTransitionsOnly(boolean transitionsOnly) {
+        this.transitionsOnly = transitionsOnly;
+    }
+
+    @DataBoundSetter
+    public void setAggregateMatrix(boolean aggregateMatrix) {
+        this.aggregateMatrix = aggregateMatrix;
+    }
+
     @Override
     public BuildStepMonitor getRequiredMonitorService() {
         return BuildStepMonitor.NONE;
@@ -70,15 +100,27 @@ public class OpsGenieNotifier extends Notifier {
 
     @Override
     public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
-        if (!isEnable()) {
+        if (!isEnable() || isAggregatedCell(build)) {
             return true;
         }
+        return sendAfterBuildData(build, listener);
+    }
+
+    /**
+     * Sends the alert for the completed build. Also called for matrix builds aggregating their
+     * cells, which do not run publishers of their own.
+     */
+    public boolean sendAfterBuildData(AbstractBuild<?, ?> build, TaskListener listener) {
         OpsGenieNotificationService service = createOpsGenieNotificationService(build, listener);
 
-        return service.sendAfterBuildData();
+        if (getDescriptor().isAsyncDelivery()) {
+            service.sendAfterBuildDataAsync();
+            return true;
+        }
+        return service.sendAfterBuildData(getDescriptor().getDeliveryBudget());
     }
 
-    private OpsGenieNotificationService createOpsGenieNotificationService(AbstractBuild<?, ?> build, BuildListener listener) {
+    private OpsGenieNotificationService createOpsGenieNotificationService(AbstractBuild<?, ?> build, TaskListener listener) {
 
         // This variables for override the fields if they are not empty
         String tagsGiven = Util.fixNull(tags).isEmpty() ? getDescriptor().getTags() : tags;
@@ -88,7 +130,9 @@ public class OpsGenieNotifier extends Notifier {
                 .setTags(tagsGiven)
                 .setTeams(teamsGiven)
                 .setPriority(alertPriority)
-                .setBuildStartPriority(notifyBuildStartPriority);
+                .setBuildStartPriority(notifyBuildStartPriority)
+                .setNewFailuresOnly(newFailuresOnly)
+                .setTransitionsOnly(transitionsOnly);
 
         String apiKeyGiven = Util.fixNull(apiKey).isEmpty() ? getDescriptor().getApiKey() : apiKey;
         String apiUrlGiven = Util.fixNull(apiUrl).isEmpty() ? getDescriptor().getApiUrl() : apiUrl;
@@ -104,14 +148,38 @@ public class OpsGenieNotifier extends Notifier {
         return new OpsGenieNotificationService(request);
     }
 
+    /**
+     * Cells of a matrix build are left to the alert of the matrix build when aggregating.
+     */
+    private boolean isAggregatedCell(AbstractBuild<?, ?> build) {
+        return aggregateMatrix && MatrixAlerts.isCell(build);
+    }
+
     @Override
     public boolean prebuild(AbstractBuild<?, ?> build, BuildListener listener) {
-        if (!isEnable() || !isNotifyBuildStart()) {
+        if (!isEnable() || isAggregatedCell(build)) {
             return true;
         }
+        sendBuildStart(build, listener);
+        // A build start alert that could not be sent is no reason to stop the build
+        return true;
+    }
+
+    /**
+     * Sends the build start alert if it is enabled. Also called for matrix builds aggregating
+     * their cells.
+     */
+    public void sendBuildStart(AbstractBuild<?, ?> build, TaskListener listener) {
+        if (!isNotifyBuildStart()) {
+            return;
+        }
 
         OpsGenieNotificationService opsGenieNotificationService = createOpsGenieNotificationService(build, listener);
-        return opsGenieNotificationService.sendPreBuildPayload();
+        if (getDescriptor().isAsyncDelivery()) {
+            opsGenieNotificationService.sendPreBuildPayloadAsync();
+        } else {
+            opsGenieNotificationService.sendPreBuildPayload(getDescriptor().getDeliveryBudget());
+        }
     }
 
     @Override
@@ -165,6 +233,21 @@ public class OpsGenieNotifier extends Notifier {
         return alertPriority;
     }
 
+    @Exported
+    public boolean isNewFailuresOnly() {
+        return newFailuresOnly;
+    }
+
+    @Exported
+    public boolean isTransitionsOnly() {
+        return transitionsOnly;
+    }
+
+    @Exported
+    public boolean isAggregateMatrix() {
+        return aggregateMatrix;
+    }
+
     @Extension
     public static final class DescriptorImpl extends BuildStepDescriptor<Publisher> {
         /**
@@ -178,6 +261,51 @@ public class OpsGenieNotifier extends Notifier {
         private String teams;
         private String tags;
         private String apiUrl;
+        private String alternateApiUrls;
+        private int connectTimeout;
+        private int socketTimeout;
+        private int connectionRequestTimeout;
+        private int maxConnections;
+        private int maxConnectionsPerRoute;
+        private int idleConnectionTimeout;
+        private boolean nonBlockingTransport;
+        private int ioThreads;
+        private boolean asyncDelivery;
+        private int deliveryBudget;
+        private int buildStartGracePeriod;
+        private int deliveryWorkers;
+        private int deliveryQueueCapacity;
+        private String deliveryRejectionPolicy;
+        private boolean durableOutbox;
+        private int retryMaxAttempts;
+        private int retryInitialDelay;
+        private int retryMaxDelay;
+        private int retryMaxTotalTime;
+        private boolean circuitBreaker;
+        private int circuitBreakerFailureThreshold;
+        private int circuitBreakerMinimumRequests;
+        private int circuitBreakerWindow;
+        private int circuitBreakerOpenDuration;
+        private int maxSectionSize;
+        private int maxSectionEntries;
+        private int maxEntryLength;
+        private int enrichmentThreads;
+        private int enrichmentBudget;
+        private int matrixWorstCells;
+        private boolean compressRequests;
+        private int compressionThreshold;
+        private int flapThreshold;
+        private int flapWindow;
+        private boolean rateLimit;
+        private int rateLimitPerMinute;
+        private int rateLimitBurst;
+        private int rateLimitMaxWait;
+        private String rateLimitShedPriority;
+        private int stormThreshold;
+        private int stormWindow;
+        private int stormTopJobs;
+        private List<RoutingRule> routingRules = new ArrayList<>();
+        private transient volatile RoutingIndex routingIndex = RoutingIndex.EMPTY;
 
         /**
          * In order to load the persisted global configuration, you have to
@@ -185,6 +313,21 @@ public class OpsGenieNotifier extends Notifier {
          */
         public DescriptorImpl() {
             load();
+            configureHttpClient();
+            configureDispatcher();
+            OpsGenieOutbox.setEnabled(durableOutbox);
+            configureRetryPolicy();
+            configureCircuitBreaker();
+            OpsGenieEndpoints.configure(getApiUrl(), alternateApiUrls);
+            configureRateLimiter();
+            configurePayloadLimits();
+            PayloadEnricher.configure(getEnrichmentThreads(), getEnrichmentBudget());
+            PayloadCompression.configure(compressRequests, getCompressionThreshold());
+            AlertTransitionFilter.get().configure(flapThreshold, getFlapWindow());
+            AlertStormAggregator.get().configure(stormThreshold, getStormWindow(), getStormTopJobs());
+            BuildStartDebouncer.get().configure(buildStartGracePeriod);
+            DeliveryProfile.invalidateAll();
+            routingIndex = RoutingIndex.compile(routingRules);
         }
 
         public boolean isApplicable(Class<? extends AbstractProject> aClass) {
@@ -203,12 +346,110 @@ public class OpsGenieNotifier extends Notifier {
         public boolean configure(StaplerRequest req, JSONObject formData) throws FormException {
             apiKey = formData.getString("apiKey");
             apiUrl = formData.getString("apiUrl");
+            alternateApiUrls = formData.optString("alternateApiUrls");
             tags = formData.getString("tags");
             teams = formData.getString("teams");
+            routingRules = req.bindJSONToList(RoutingRule.class, formData.opt("routingRules"));
+            connectTimeout = formData.optInt("connectTimeout", OpsGenieHttpClient.DEFAULT_CONNECT_TIMEOUT);
+            socketTimeout = formData.optInt("socketTimeout", OpsGenieHttpClient.DEFAULT_SOCKET_TIMEOUT);
+            connectionRequestTimeout = formData.optInt("connectionRequestTimeout",
+                    OpsGenieHttpClient.DEFAULT_CONNECTION_REQUEST_TIMEOUT);
+            maxConnections = formData.optInt("maxConnections", OpsGenieHttpClient.DEFAULT_MAX_CONNECTIONS);
+            maxConnectionsPerRoute = formData.optInt("maxConnectionsPerRoute",
+                    OpsGenieHttpClient.DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+            idleConnectionTimeout = formData.optInt("idleConnectionTimeout",
+                    OpsGenieHttpClient.DEFAULT_IDLE_CONNECTION_TIMEOUT);
+            nonBlockingTransport = formData.optBoolean("nonBlockingTransport");
+            ioThreads = formData.optInt("ioThreads", OpsGenieAsyncHttpClient.DEFAULT_IO_THREADS);
+            asyncDelivery = formData.optBoolean("asyncDelivery");
+            deliveryBudget = formData.optInt("deliveryBudget", DEFAULT_DELIVERY_BUDGET);
+            buildStartGracePeriod = formData.optInt("buildStartGracePeriod",
+                    BuildStartDebouncer.DEFAULT_GRACE_PERIOD);
+            deliveryWorkers = formData.optInt("deliveryWorkers", OpsGenieDispatcher.DEFAULT_WORKERS);
+            deliveryQueueCapacity = formData.optInt("deliveryQueueCapacity", OpsGenieDispatcher.DEFAULT_QUEUE_CAPACITY);
+            deliveryRejectionPolicy = formData.optString("deliveryRejectionPolicy");
+            durableOutbox = formData.optBoolean("durableOutbox");
+            retryMaxAttempts = formData.optInt("retryMaxAttempts", OpsGenieRetryPolicy.DEFAULT_MAX_ATTEMPTS);
+            retryInitialDelay = formData.optInt("retryInitialDelay", OpsGenieRetryPolicy.DEFAULT_INITIAL_DELAY);
+            retryMaxDelay = formData.optInt("retryMaxDelay", OpsGenieRetryPolicy.DEFAULT_MAX_DELAY);
+            retryMaxTotalTime = formData.optInt("retryMaxTotalTime", OpsGenieRetryPolicy.DEFAULT_MAX_TOTAL_TIME);
+            circuitBreaker = formData.optBoolean("circuitBreaker");
+            circuitBreakerFailureThreshold = formData.optInt("circuitBreakerFailureThreshold",
+                    OpsGenieCircuitBreaker.DEFAULT_FAILURE_THRESHOLD);
+            circuitBreakerMinimumRequests = formData.optInt("circuitBreakerMinimumRequests",
+                    OpsGenieCircuitBreaker.DEFAULT_MINIMUM_REQUESTS);
+            circuitBreakerWindow = formData.optInt("circuitBreakerWindow", OpsGenieCircuitBreaker.DEFAULT_WINDOW);
+            circuitBreakerOpenDuration = formData.optInt("circuitBreakerOpenDuration",
+                    OpsGenieCircuitBreaker.DEFAULT_OPEN_DURATION);
+            maxSectionSize = formData.optInt("maxSectionSize", PayloadLimits.DEFAULT_MAX_SECTION_SIZE);
+            maxSectionEntries = formData.optInt("maxSectionEntries", PayloadLimits.DEFAULT_MAX_ENTRIES);
+            maxEntryLength = formData.optInt("maxEntryLength", PayloadLimits.DEFAULT_MAX_ENTRY_LENGTH);
+            enrichmentThreads = formData.optInt("enrichmentThreads", PayloadEnricher.DEFAULT_PARALLELISM);
+            enrichmentBudget = formData.optInt("enrichmentBudget", PayloadEnricher.DEFAULT_TIME_BUDGET);
+            matrixWorstCells = formData.optInt("matrixWorstCells", MatrixAlerts.DEFAULT_WORST_CELLS);
+            compressRequests = formData.optBoolean("compressRequests");
+            compressionThreshold = formData.optInt("compressionThreshold", PayloadCompression.DEFAULT_THRESHOLD);
+            flapThreshold = formData.optInt("flapThreshold", AlertTransitionFilter.DEFAULT_FLAP_THRESHOLD);
+            flapWindow = formData.optInt("flapWindow", AlertTransitionFilter.DEFAULT_FLAP_WINDOW);
+            stormThreshold = formData.optInt("stormThreshold", AlertStormAggregator.DEFAULT_STORM_THRESHOLD);
+            stormWindow = formData.optInt("stormWindow", AlertStormAggregator.DEFAULT_STORM_WINDOW);
+            stormTopJobs = formData.optInt("stormTopJobs", AlertStormAggregator.DEFAULT_TOP_JOBS);
+            rateLimit = formData.optBoolean("rateLimit");
+            rateLimitPerMinute = formData.optInt("rateLimitPerMinute", OpsGenieRateLimiter.DEFAULT_REQUESTS_PER_MINUTE);
+            rateLimitBurst = formData.optInt("rateLimitBurst", OpsGenieRateLimiter.DEFAULT_BURST);
+            rateLimitMaxWait = formData.optInt("rateLimitMaxWait", OpsGenieRateLimiter.DEFAULT_MAX_WAIT);
+            rateLimitShedPriority = formData.optString("rateLimitShedPriority");
             save();
+            configureHttpClient();
+            configureDispatcher();
+            OpsGenieOutbox.setEnabled(durableOutbox);
+            configureRetryPolicy();
+            configureCircuitBreaker();
+            OpsGenieEndpoints.configure(getApiUrl(), alternateApiUrls);
+            configureRateLimiter();
+            configurePayloadLimits();
+            PayloadEnricher.configure(getEnrichmentThreads(), getEnrichmentBudget());
+            PayloadCompression.configure(compressRequests, getCompressionThreshold());
+            AlertTransitionFilter.get().configure(flapThreshold, getFlapWindow());
+            AlertStormAggregator.get().configure(stormThreshold, getStormWindow(), getStormTopJobs());
+            BuildStartDebouncer.get().configure(buildStartGracePeriod);
+            DeliveryProfile.invalidateAll();
+            routingIndex = RoutingIndex.compile(routingRules);
             return super.configure(req, formData);
         }
 
+        private void configureHttpClient() {
+            OpsGenieHttpClient.configure(getMaxConnections(), getMaxConnectionsPerRoute(), getConnectTimeout(),
+                    getSocketTimeout(), getConnectionRequestTimeout(), getIdleConnectionTimeout());
+            OpsGenieAsyncHttpClient.configure(nonBlockingTransport, getIoThreads(), getMaxConnections(),
+                    getMaxConnectionsPerRoute(), getConnectTimeout(), getSocketTimeout(),
+                    getConnectionRequestTimeout());
+        }
+
+        private void configureRetryPolicy() {
+            OpsGenieRetryPolicy.configure(getRetryMaxAttempts(), getRetryInitialDelay(), getRetryMaxDelay(),
+                    getRetryMaxTotalTime());
+        }
+
+        private void configureCircuitBreaker() {
+            OpsGenieCircuitBreaker.configure(circuitBreaker, getCircuitBreakerFailureThreshold(),
+                    getCircuitBreakerMinimumRequests(), getCircuitBreakerWindow(), getCircuitBreakerOpenDuration());
+        }
+
+        private void configureRateLimiter() {
+            OpsGenieRateLimiter.configure(rateLimit, getRateLimitPerMinute(), getRateLimitBurst(),
+                    getRateLimitMaxWait(), getRateLimitShedPriority());
+        }
+
+        private void configurePayloadLimits() {
+            PayloadLimits.configure(getMaxSectionSize(), getMaxSectionEntries(), getMaxEntryLength());
+        }
+
+        private void configureDispatcher() {
+            OpsGenieDispatcher.configure(getDeliveryWorkers(), getDeliveryQueueCapacity(),
+                    getDeliveryRejectionPolicy());
+        }
+
         public String getApiKey() {
             return apiKey;
         }
@@ -220,6 +461,10 @@ public class OpsGenieNotifier extends Notifier {
             return apiUrl;
         }
 
+        public String getAlternateApiUrls() {
+            return alternateApiUrls;
+        }
+
         public String getTeams() {
             return teams;
         }
@@ -229,6 +474,202 @@ public class OpsGenieNotifier extends Notifier {
             return tags;
         }
 
+        public List<RoutingRule> getRoutingRules() {
+            return routingRules != null ? routingRules : new ArrayList<RoutingRule>();
+        }
+
+        /**
+         * Returns the routing rules compiled for matching, empty if there are none.
+         */
+        public RoutingIndex getRoutingIndex() {
+            return routingIndex;
+        }
+
+        public int getConnectTimeout() {
+            return connectTimeout > 0 ? connectTimeout : OpsGenieHttpClient.DEFAULT_CONNECT_TIMEOUT;
+        }
+
+        public int getSocketTimeout() {
+            return socketTimeout > 0 ? socketTimeout : OpsGenieHttpClient.DEFAULT_SOCKET_TIMEOUT;
+        }
+
+        public int getConnectionRequestTimeout() {
+            return connectionRequestTimeout > 0
+                    ? connectionRequestTimeout : OpsGenieHttpClient.DEFAULT_CONNECTION_REQUEST_TIMEOUT;
+        }
+
+        public int getMaxConnections() {
+            return maxConnections > 0 ? maxConnections : OpsGenieHttpClient.DEFAULT_MAX_CONNECTIONS;
+        }
+
+        public int getMaxConnectionsPerRoute() {
+            return maxConnectionsPerRoute > 0
+                    ? maxConnectionsPerRoute : OpsGenieHttpClient.DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+        }
+
+        public int getIdleConnectionTimeout() {
+            return idleConnectionTimeout > 0
+                    ? idleConnectionTimeout : OpsGenieHttpClient.DEFAULT_IDLE_CONNECTION_TIMEOUT;
+        }
+
+        public boolean isNonBlockingTransport() {
+            return nonBlockingTransport;
+        }
+
+        public int getIoThreads() {
+            return ioThreads > 0 ? ioThreads : OpsGenieAsyncHttpClient.DEFAULT_IO_THREADS;
+        }
+
+        public boolean isAsyncDelivery() {
+            return asyncDelivery;
+        }
+
+        public int getDeliveryBudget() {
+            return deliveryBudget > 0 ? deliveryBudget : DEFAULT_DELIVERY_BUDGET;
+        }
+
+        public int getBuildStartGracePeriod() {
+            return buildStartGracePeriod;
+        }
+
+        public int getDeliveryWorkers() {
+            return deliveryWorkers > 0 ? deliveryWorkers : OpsGenieDispatcher.DEFAULT_WORKERS;
+        }
+
+        public int getDeliveryQueueCapacity() {
+            return deliveryQueueCapacity > 0 ? deliveryQueueCapacity : OpsGenieDispatcher.DEFAULT_QUEUE_CAPACITY;
+        }
+
+        public OpsGenieDispatcher.RejectionPolicy getDeliveryRejectionPolicy() {
+            return OpsGenieDispatcher.RejectionPolicy.fromName(deliveryRejectionPolicy);
+        }
+
+        public boolean isDurableOutbox() {
+            return durableOutbox;
+        }
+
+        public int getRetryMaxAttempts() {
+            return retryMaxAttempts > 0 ? retryMaxAttempts : OpsGenieRetryPolicy.DEFAULT_MAX_ATTEMPTS;
+        }
+
+        public int getRetryInitialDelay() {
+            return retryInitialDelay > 0 ? retryInitialDelay : OpsGenieRetryPolicy.DEFAULT_INITIAL_DELAY;
+        }
+
+        public int getRetryMaxDelay() {
+            return retryMaxDelay > 0 ? retryMaxDelay : OpsGenieRetryPolicy.DEFAULT_MAX_DELAY;
+        }
+
+        public int getRetryMaxTotalTime() {
+            return retryMaxTotalTime > 0 ? retryMaxTotalTime : OpsGenieRetryPolicy.DEFAULT_MAX_TOTAL_TIME;
+        }
+
+        public boolean isCircuitBreaker() {
+            return circuitBreaker;
+        }
+
+        public int getCircuitBreakerFailureThreshold() {
+            return circuitBreakerFailureThreshold > 0
+                    ? circuitBreakerFailureThreshold : OpsGenieCircuitBreaker.DEFAULT_FAILURE_THRESHOLD;
+        }
+
+        public int getCircuitBreakerMinimumRequests() {
+            return circuitBreakerMinimumRequests > 0
+                    ? circuitBreakerMinimumRequests : OpsGenieCircuitBreaker.DEFAULT_MINIMUM_REQUESTS;
+        }
+
+        public int getCircuitBreakerWindow() {
+            return circuitBreakerWindow > 0 ? circuitBreakerWindow : OpsGenieCircuitBreaker.DEFAULT_WINDOW;
+        }
+
+        public int getCircuitBreakerOpenDuration() {
+            return circuitBreakerOpenDuration > 0
+                    ? circuitBreakerOpenDuration : OpsGenieCircuitBreaker.DEFAULT_OPEN_DURATION;
+        }
+
+        public int getMaxSectionSize() {
+            return maxSectionSize > 0 ? maxSectionSize : PayloadLimits.DEFAULT_MAX_SECTION_SIZE;
+        }
+
+        public int getMaxSectionEntries() {
+            return maxSectionEntries > 0 ? maxSectionEntries : PayloadLimits.DEFAULT_MAX_ENTRIES;
+        }
+
+        public int getMaxEntryLength() {
+            return maxEntryLength > 0 ? maxEntryLength : PayloadLimits.DEFAULT_MAX_ENTRY_LENGTH;
+        }
+
+        public int getEnrichmentThreads() {
+            return enrichmentThreads > 0 ? enrichmentThreads : PayloadEnricher.DEFAULT_PARALLELISM;
+        }
+
+        public int getEnrichmentBudget() {
+            return enrichmentBudget > 0 ? enrichmentBudget : PayloadEnricher.DEFAULT_TIME_BUDGET;
+        }
+
+        public int getMatrixWorstCells() {
+            return matrixWorstCells > 0 ? matrixWorstCells : MatrixAlerts.DEFAULT_WORST_CELLS;
+        }
+
+        public boolean isCompressRequests() {
+            return compressRequests;
+        }
+
+        public int getCompressionThreshold() {
+            return compressionThreshold > 0 ? compressionThreshold : PayloadCompression.DEFAULT_THRESHOLD;
+        }
+
+        public int getFlapThreshold() {
+            return flapThreshold;
+        }
+
+        public int getFlapWindow() {
+            return flapWindow > 0 ? flapWindow : AlertTransitionFilter.DEFAULT_FLAP_WINDOW;
+        }
+
+        public int getStormThreshold() {
+            return stormThreshold;
+        }
+
+        public int getStormWindow() {
+            return stormWindow > 0 ? stormWindow : AlertStormAggregator.DEFAULT_STORM_WINDOW;
+        }
+
+        public int getStormTopJobs() {
+            return stormTopJobs > 0 ? stormTopJobs : AlertStormAggregator.DEFAULT_TOP_JOBS;
+        }
+
+        public boolean isRateLimit() {
+            return rateLimit;
+        }
+
+        public int getRateLimitPerMinute() {
+            return rateLimitPerMinute > 0 ? rateLimitPerMinute : OpsGenieRateLimiter.DEFAULT_REQUESTS_PER_MINUTE;
+        }
+
+        public int getRateLimitBurst() {
+            return rateLimitBurst > 0 ? rateLimitBurst : OpsGenieRateLimiter.DEFAULT_BURST;
+        }
+
+        public int getRateLimitMaxWait() {
+            return rateLimitMaxWait > 0 ? rateLimitMaxWait : OpsGenieRateLimiter.DEFAULT_MAX_WAIT;
+        }
+
+        public AlertPriority getRateLimitShedPriority() {
+            if (StringUtils.isBlank(rateLimitShedPriority)) {
+                return OpsGenieRateLimiter.DEFAULT_SHED_PRIORITY;
+            }
+            return AlertPriority.fromDisplayName(rateLimitShedPriority);
+        }
+
+        public AlertPriority[] getAlertPriorities() {
+            return ALERT_PRIORITIES;
+        }
+
+        public OpsGenieDispatcher.RejectionPolicy[] getRejectionPolicies() {
+            return OpsGenieDispatcher.RejectionPolicy.values();
+        }
+
         @Override
         public String toString() {
             return "DescriptorImpl{" +
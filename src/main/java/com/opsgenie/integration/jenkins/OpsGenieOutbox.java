@@ -0,0 +1,483 @@
+package com.opsgenie.integration.jenkins;
+
+import hudson.init.Terminator;
+import hudson.util.Secret;
+import jenkins.model.Jenkins;
+import org.apache.commons.io.output.NullOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Append only journal of alerts under {@code JENKINS_HOME/opsgenie-outbox}.
+ * <p/>
+ * Every payload is written to a memory mapped segment file before it is sent and settled once
+ * OpsGenie answered. Alerts that could not be delivered stay pending and are replayed by
+ * {@link OpsGenieOutboxReplayer}, also after a controller restart. Segments without pending
+ * alerts are deleted and sparsely populated ones are compacted into the active segment.
+ * <p/>
+ * Record layout: one state byte, the body length as int, then the body which holds the API url,
+ * the API key encrypted with {@link Secret} and the payload. The state byte is written last so
+ * that a torn write at the end of a segment reads as the end of the data.
+ */
+public final class OpsGenieOutbox {
+    public static final long NO_TICKET = -1L;
+
+    static final String DIRECTORY = "opsgenie-outbox";
+    static final int SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.log");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte END = 0;
+    private static final byte PENDING = 1;
+    private static final byte SETTLED = 2;
+    private static final int HEADER_SIZE = 5;
+
+    private static final Logger logger = LoggerFactory.getLogger(OpsGenieOutbox.class);
+
+    private static volatile boolean enabled;
+    private static volatile OpsGenieOutbox instance;
+
+    private final File directory;
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Set<Long> inFlight = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    private final AtomicBoolean replaying = new AtomicBoolean();
+    private Segment active;
+    private int nextSequence;
+
+    OpsGenieOutbox(File directory) throws IOException {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+                if (matcher.matches()) {
+                    int sequence = Integer.parseInt(matcher.group(1));
+                    segments.put(sequence, Segment.open(file, sequence));
+                    nextSequence = Math.max(nextSequence, sequence + 1);
+                }
+            }
+        }
+
+        // Keeps writing to the newest segment, so that restarts do not leave a segment each
+        Map.Entry<Integer, Segment> newest = segments.lastEntry();
+        if (newest != null && newest.getValue().buffer.capacity() == SEGMENT_SIZE
+                && newest.getValue().writePosition < SEGMENT_SIZE / 2) {
+            active = newest.getValue();
+        } else {
+            active = createSegment(SEGMENT_SIZE);
+        }
+    }
+
+    public static void setEnabled(boolean enabled) {
+        OpsGenieOutbox.enabled = enabled;
+    }
+
+    /**
+     * Returns the outbox, or {@code null} when it is disabled or there is no Jenkins home to keep
+     * it in.
+     */
+    public static OpsGenieOutbox get() {
+        if (!enabled) {
+            return null;
+        }
+
+        OpsGenieOutbox current = instance;
+        if (current == null) {
+            synchronized (OpsGenieOutbox.class) {
+                current = instance;
+                if (current == null) {
+                    Jenkins jenkins = Jenkins.getInstanceOrNull();
+                    if (jenkins == null) {
+                        return null;
+                    }
+                    try {
+                        current = new OpsGenieOutbox(new File(jenkins.getRootDir(), DIRECTORY));
+                        instance = current;
+                    } catch (IOException e) {
+                        logger.error("Exception while opening OpsGenie outbox: " + e.getMessage());
+                        return null;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Journals the alert and returns a ticket identifying it, or {@link #NO_TICKET} if it could
+     * not be written in which case the alert is still sent but not replayed.
+     */
+    public long append(String apiUrl, String apiKey, byte[] payload) {
+        byte[] body = encode(apiUrl, apiKey, payload);
+        try {
+            synchronized (this) {
+                long ticket = write(body);
+                inFlight.add(ticket);
+                return ticket;
+            }
+        } catch (IOException e) {
+            logger.error("Exception while writing to OpsGenie outbox: " + e.getMessage());
+            return NO_TICKET;
+        }
+    }
+
+    /**
+     * Journals an alert that is not sent now, leaving it to the replayer. Returns {@code false}
+     * if the outbox is disabled or the alert could not be written.
+     */
+    public static boolean defer(String apiUrl, String apiKey, byte[] payload) {
+        OpsGenieOutbox outbox = get();
+        if (outbox == null) {
+            return false;
+        }
+        long ticket = outbox.append(apiUrl, apiKey, payload);
+        if (ticket == NO_TICKET) {
+            return false;
+        }
+        outbox.release(ticket);
+        return true;
+    }
+
+    /**
+     * Marks the alert as done, it will not be replayed.
+     */
+    public void settle(long ticket) {
+        Segment segment = segments.get(sequenceOf(ticket));
+        if (segment != null) {
+            segment.settle(offsetOf(ticket));
+        }
+        inFlight.remove(ticket);
+    }
+
+    /**
+     * Leaves the alert pending so that the replayer picks it up.
+     */
+    public void release(long ticket) {
+        inFlight.remove(ticket);
+    }
+
+    public boolean hasBacklog() {
+        return getPendingCount() > inFlight.size();
+    }
+
+    public int getPendingCount() {
+        int pending = 0;
+        for (Segment segment : segments.values()) {
+            pending += segment.pending.get();
+        }
+        return pending;
+    }
+
+    /**
+     * Replays the backlog on a delivery worker. Left to the {@link OpsGenieOutboxReplayer} when
+     * all workers are busy.
+     */
+    public void scheduleReplay() {
+        if (replaying.get()) {
+            return;
+        }
+        OpsGenieDispatcher.get().tryExecute(new Runnable() {
+            @Override
+            public void run() {
+                replay();
+            }
+        });
+    }
+
+    /**
+     * Sends pending alerts oldest first. Stops at the first alert that still can not be
+     * delivered, the rest is tried again on the next run.
+     */
+    public void replay() {
+        if (!replaying.compareAndSet(false, true)) {
+            return;
+        }
+
+        PrintStream quietConsole = new PrintStream(new NullOutputStream());
+        int replayed = 0;
+        try {
+            for (Segment segment : segments.values()) {
+                if (segment.pending.get() == 0) {
+                    continue;
+                }
+                for (Record record : segment.pendingRecords()) {
+                    if (!inFlight.add(record.ticket)) {
+                        // Still being delivered by a build
+                        continue;
+                    }
+                    // One attempt per run, the replay itself is the retry
+                    OpsGenieWebhookSender.Outcome outcome = new OpsGenieWebhookSender(record.apiUrl, record.apiKey,
+                            quietConsole).send(record.payload, OpsGenieRetryPolicy.NONE);
+                    if (outcome == OpsGenieWebhookSender.Outcome.FAILED) {
+                        inFlight.remove(record.ticket);
+                        return;
+                    }
+                    settle(record.ticket);
+                    replayed++;
+                }
+            }
+        } finally {
+            if (replayed > 0) {
+                logger.info("Replayed " + replayed + " alerts from the OpsGenie outbox");
+            }
+            try {
+                // Still guarded, so no other replay sends records while they are moved
+                compactSegments();
+            } finally {
+                replaying.set(false);
+            }
+        }
+    }
+
+    /**
+     * Deletes segments without pending alerts and moves the remaining alerts of sparsely
+     * populated segments into the active one. Called periodically, as segments fill up without
+     * any backlog when every alert is delivered. Left to the replay if one is running.
+     */
+    public void compact() {
+        if (!replaying.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            compactSegments();
+        } finally {
+            replaying.set(false);
+        }
+    }
+
+    /**
+     * Only called while holding the replay guard, so no replay sends records while they are
+     * moved.
+     */
+    private synchronized void compactSegments() {
+        Iterator<Segment> iterator = segments.values().iterator();
+        while (iterator.hasNext()) {
+            Segment segment = iterator.next();
+            if (segment == active) {
+                continue;
+            }
+
+            if (segment.pending.get() > 0 && segment.pending.get() * 4 < segment.records) {
+                for (Record record : segment.pendingRecords()) {
+                    if (inFlight.contains(record.ticket)) {
+                        continue;
+                    }
+                    try {
+                        write(encode(record.apiUrl, record.apiKey, record.payload));
+                        segment.settle(offsetOf(record.ticket));
+                    } catch (IOException e) {
+                        logger.error("Exception while compacting OpsGenie outbox: " + e.getMessage());
+                        return;
+                    }
+                }
+            }
+
+            if (segment.pending.get() == 0) {
+                iterator.remove();
+                if (!segment.file.delete()) {
+                    // Mapped files can not be deleted on some platforms, it is retried on the next start
+                    logger.debug("Could not delete OpsGenie outbox segment " + segment.file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Flushes the active segment to disk, so that alerts also survive an operating system crash.
+     */
+    public synchronized void force() {
+        active.buffer.force();
+    }
+
+    @Terminator
+    public static void shutdown() {
+        OpsGenieOutbox current = instance;
+        if (current != null) {
+            current.force();
+        }
+    }
+
+    private long write(byte[] body) throws IOException {
+        int size = HEADER_SIZE + body.length;
+        if (active.buffer.capacity() - active.writePosition < size) {
+            active.buffer.force();
+            active = createSegment(Math.max(SEGMENT_SIZE, size));
+        }
+
+        int offset = active.writePosition;
+        ByteBuffer view = active.buffer.duplicate();
+        view.position(offset + HEADER_SIZE);
+        view.put(body);
+        active.buffer.putInt(offset + 1, body.length);
+        active.buffer.put(offset, PENDING);
+
+        active.writePosition += size;
+        active.records++;
+        active.pending.incrementAndGet();
+        return ((long) active.sequence << 32) | offset;
+    }
+
+    private Segment createSegment(int size) throws IOException {
+        int sequence = nextSequence++;
+        Segment segment = Segment.create(new File(directory, "segment-" + sequence + ".log"), sequence, size);
+        segments.put(sequence, segment);
+        return segment;
+    }
+
+    private static int sequenceOf(long ticket) {
+        return (int) (ticket >>> 32);
+    }
+
+    private static int offsetOf(long ticket) {
+        return (int) ticket;
+    }
+
+    int getSegmentCount() {
+        return segments.size();
+    }
+
+    private static byte[] encode(String apiUrl, String apiKey, byte[] payload) {
+        byte[] url = apiUrl.getBytes(UTF_8);
+        byte[] key = sealApiKey(apiKey).getBytes(UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(8 + url.length + key.length + payload.length);
+        body.putInt(url.length).put(url).putInt(key.length).put(key).put(payload);
+        return body.array();
+    }
+
+    static String sealApiKey(String apiKey) {
+        return Secret.fromString(apiKey).getEncryptedValue();
+    }
+
+    /**
+     * Also reads API keys journaled in plain text by earlier versions.
+     */
+    static String unsealApiKey(String sealed) {
+        return Secret.toString(Secret.fromString(sealed));
+    }
+
+    private static final class Record {
+        private final long ticket;
+        private final String apiUrl;
+        private final String apiKey;
+        private final byte[] payload;
+
+        private Record(long ticket, ByteBuffer body) {
+            this.ticket = ticket;
+            this.apiUrl = new String(readBytes(body, body.getInt()), UTF_8);
+            this.apiKey = unsealApiKey(new String(readBytes(body, body.getInt()), UTF_8));
+            this.payload = readBytes(body, body.remaining());
+        }
+
+        private static byte[] readBytes(ByteBuffer body, int length) {
+            byte[] bytes = new byte[length];
+            body.get(bytes);
+            return bytes;
+        }
+    }
+
+    private static final class Segment {
+        private final int sequence;
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile int writePosition;
+        private int records;
+
+        private Segment(int sequence, File file, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        static Segment create(File file, int sequence, int size) throws IOException {
+            return new Segment(sequence, file, map(file, size));
+        }
+
+        static Segment open(File file, int sequence) throws IOException {
+            Segment segment = new Segment(sequence, file, map(file, (int) file.length()));
+            segment.scan();
+            return segment;
+        }
+
+        private static MappedByteBuffer map(File file, int size) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                // The mapping stays valid after the channel is closed
+                return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } finally {
+                raf.close();
+            }
+        }
+
+        private void scan() {
+            int position = 0;
+            while (position + HEADER_SIZE <= buffer.capacity()) {
+                byte state = buffer.get(position);
+                int length = buffer.getInt(position + 1);
+                if (state == END || length < 0 || position + HEADER_SIZE + length > buffer.capacity()) {
+                    break;
+                }
+                records++;
+                if (state == PENDING) {
+                    pending.incrementAndGet();
+                }
+                position += HEADER_SIZE + length;
+            }
+            writePosition = position;
+        }
+
+        void settle(int offset) {
+            synchronized (this) {
+                if (buffer.get(offset) != PENDING) {
+                    return;
+                }
+                buffer.put(offset, SETTLED);
+            }
+            pending.decrementAndGet();
+        }
+
+        List<Record> pendingRecords() {
+            List<Record> pendingRecords = new ArrayList<>();
+            int position = 0;
+            int end = writePosition;
+            while (position < end) {
+                byte state = buffer.get(position);
+                int length = buffer.getInt(position + 1);
+                if (state == PENDING) {
+                    ByteBuffer body = buffer.duplicate();
+                    body.position(position + HEADER_SIZE);
+                    body.limit(position + HEADER_SIZE + length);
+                    pendingRecords.add(new Record(((long) sequence << 32) | position, body.slice()));
+                }
+                position += HEADER_SIZE + length;
+            }
+            return pendingRecords;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.opsgenie.integration.jenkins;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically drains alerts left in the {@link OpsGenieOutbox}, starting shortly after the
+ * controller came up so that alerts journaled before a restart are not lost.
+ */
+@Extension
+public class OpsGenieOutboxReplayer extends AsyncPeriodicWork {
+
+    public OpsGenieOutboxReplayer() {
+        super("OpsGenie outbox replay");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.MINUTES.toMillis(1);
+    }
+
+    @Override
+    public long getInitialDelay() {
+        return TimeUnit.SECONDS.toMillis(15);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        OpsGenieOutbox outbox = OpsGenieOutbox.get();
+        if (outbox == null) {
+            return;
+        }
+
+        int pending = outbox.getPendingCount();
+        if (pending > 0) {
+            listener.getLogger().println(pending + " alerts pending in the OpsGenie outbox");
+            outbox.replay();
+        } else {
+            // Every alert was delivered, but the settled segments still take up disk space
+            outbox.compact();
+        }
+        outbox.force();
+    }
+}
@@ -0,0 +1,278 @@
+package com.opsgenie.integration.jenkins;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plugin wide token bucket limiting the requests made with a single OpsGenie API key.
+ * <p/>
+ * The bucket holds up to the burst size and refills at the configured rate. When it is empty,
+ * requests wait in a queue ordered by {@link AlertPriority}, so that a P1 alert goes out before
+ * the P5 alerts that arrived ahead of it. Alerts at or below the shed priority do not wait at all
+ * and are refused right away. A 429 from OpsGenie empties the bucket until its
+ * {@code Retry-After} passed, so that the waiting alerts do not run into the limit again.
+ * <p/>
+ * Reconfiguring retires the existing limiters. Alerts waiting on or holding a retired limiter
+ * move over to the current limiter of their API key, so that no two buckets hand out tokens for
+ * the same key at the same time.
+ */
+public final class OpsGenieRateLimiter {
+    public static final int DEFAULT_REQUESTS_PER_MINUTE = 300;
+    public static final int DEFAULT_BURST = 20;
+    public static final int DEFAULT_MAX_WAIT = 30;
+    public static final AlertPriority DEFAULT_SHED_PRIORITY = AlertPriority.P5;
+
+    static final int MAX_WAITERS = 1000;
+    static final int MAX_API_KEYS = 1000;
+
+    private static final ConcurrentMap<String, OpsGenieRateLimiter> limiters = new ConcurrentHashMap<>();
+
+    private static volatile boolean enabled;
+    private static volatile double tokensPerMilli = DEFAULT_REQUESTS_PER_MINUTE / 60000.0;
+    private static volatile int burst = DEFAULT_BURST;
+    private static volatile long maxWaitMillis = TimeUnit.SECONDS.toMillis(DEFAULT_MAX_WAIT);
+    private static volatile AlertPriority shedPriority = DEFAULT_SHED_PRIORITY;
+    static volatile int maxWaiters = MAX_WAITERS;
+
+    private final String apiKey;
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+    private double tokens;
+    private long refilledAt;
+    private long pausedUntil;
+    private long arrivals;
+    private boolean retired;
+
+    private OpsGenieRateLimiter(String apiKey) {
+        this.apiKey = apiKey;
+        this.tokens = burst;
+        this.refilledAt = System.currentTimeMillis();
+    }
+
+    /**
+     * @param shedPriority alerts of this priority and below are refused instead of waiting
+     */
+    public static void configure(boolean enabled, int requestsPerMinute, int burst, int maxWaitSeconds,
+                                 AlertPriority shedPriority) {
+        OpsGenieRateLimiter.tokensPerMilli = requestsPerMinute / 60000.0;
+        OpsGenieRateLimiter.burst = Math.max(1, burst);
+        OpsGenieRateLimiter.maxWaitMillis = TimeUnit.SECONDS.toMillis(maxWaitSeconds);
+        OpsGenieRateLimiter.shedPriority = shedPriority;
+        OpsGenieRateLimiter.enabled = enabled;
+        retireAll();
+    }
+
+    private static void retireAll() {
+        for (OpsGenieRateLimiter limiter : limiters.values()) {
+            limiter.retire();
+        }
+        limiters.clear();
+    }
+
+    /**
+     * Returns the limiter of the given API key, or {@code null} if rate limiting is disabled.
+     */
+    public static OpsGenieRateLimiter forApiKey(String apiKey) {
+        if (!enabled) {
+            return null;
+        }
+
+        OpsGenieRateLimiter limiter = limiters.get(apiKey);
+        if (limiter == null) {
+            if (limiters.size() >= MAX_API_KEYS) {
+                // Only reachable with keys generated per build, a fresh bucket is harmless then
+                retireAll();
+            }
+            OpsGenieRateLimiter created = new OpsGenieRateLimiter(apiKey);
+            limiter = limiters.putIfAbsent(apiKey, created);
+            if (limiter == null) {
+                limiter = created;
+            }
+        }
+        return limiter;
+    }
+
+    /**
+     * Takes a token, waiting behind higher priority alerts for at most the configured maximum
+     * wait or the given budget, whichever is shorter. Returns {@code false} if the alert was shed
+     * or no token became available in time.
+     */
+    public boolean acquire(AlertPriority priority, long budgetMillis) throws InterruptedException {
+        if (priority == null) {
+            priority = AlertPriority.P3;
+        }
+        long deadline = System.currentTimeMillis() + Math.min(budgetMillis, maxWaitMillis);
+        return acquireUntil(priority, deadline);
+    }
+
+    /**
+     * Waits on this limiter until the deadline. Moves over to the current limiter of the API key
+     * when this one is retired meanwhile.
+     */
+    private boolean acquireUntil(AlertPriority priority, long deadline) throws InterruptedException {
+        synchronized (this) {
+            if (!retired) {
+                Boolean acquired = acquireHere(priority, deadline);
+                if (acquired != null) {
+                    return acquired;
+                }
+            }
+        }
+
+        OpsGenieRateLimiter current = forApiKey(apiKey);
+        return current == null || current.acquireUntil(priority, deadline);
+    }
+
+    /**
+     * Called holding the lock. Returns {@code null} if the limiter was retired before a token
+     * was taken.
+     */
+    private Boolean acquireHere(AlertPriority priority, long deadline) throws InterruptedException {
+        refill(System.currentTimeMillis());
+        if (waiters.isEmpty() && tokens >= 1) {
+            tokens--;
+            return true;
+        }
+        if (priority.ordinal() >= shedPriority.ordinal()) {
+            return false;
+        }
+
+        Waiter waiter = new Waiter(priority, arrivals++);
+        if (waiters.size() >= maxWaiters && !evictLowerThan(waiter)) {
+            return false;
+        }
+        waiters.add(waiter);
+        try {
+            while (!waiter.shed) {
+                if (retired) {
+                    return null;
+                }
+                long now = System.currentTimeMillis();
+                refill(now);
+                if (waiters.peek() == waiter && tokens >= 1) {
+                    tokens--;
+                    return true;
+                }
+
+                long remaining = deadline - now;
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(Math.max(1, Math.min(remaining, millisUntilNextToken(now))));
+            }
+            return false;
+        } finally {
+            waiters.remove(waiter);
+            // Lets the next waiter check whether it is at the head of the queue now
+            notifyAll();
+        }
+    }
+
+    /**
+     * Takes a token if one is available right away and no other alert is waiting for it.
+     */
+    public boolean tryAcquire() {
+        synchronized (this) {
+            if (!retired) {
+                refill(System.currentTimeMillis());
+                if (waiters.isEmpty() && tokens >= 1) {
+                    tokens--;
+                    return true;
+                }
+                return false;
+            }
+        }
+
+        OpsGenieRateLimiter current = forApiKey(apiKey);
+        return current == null || current.tryAcquire();
+    }
+
+    /**
+     * Called when OpsGenie answered with 429, no more tokens are handed out until the given
+     * delay passed.
+     */
+    public void onRateLimited(long retryAfterMillis) {
+        synchronized (this) {
+            if (!retired) {
+                long now = System.currentTimeMillis();
+                refill(now);
+                tokens = 0;
+                pausedUntil = Math.max(pausedUntil, now + retryAfterMillis);
+                return;
+            }
+        }
+
+        OpsGenieRateLimiter current = forApiKey(apiKey);
+        if (current != null) {
+            current.onRateLimited(retryAfterMillis);
+        }
+    }
+
+    /**
+     * Number of alerts waiting for a token.
+     */
+    synchronized int getQueueLength() {
+        return waiters.size();
+    }
+
+    private synchronized void retire() {
+        retired = true;
+        // Waiters move over to the current limiter
+        notifyAll();
+    }
+
+    private void refill(long now) {
+        long from = Math.max(refilledAt, pausedUntil);
+        if (now > from) {
+            tokens = Math.min(burst, tokens + (now - from) * tokensPerMilli);
+        }
+        refilledAt = Math.max(refilledAt, now);
+    }
+
+    private long millisUntilNextToken(long now) {
+        if (pausedUntil > now) {
+            return pausedUntil - now;
+        }
+        return (long) Math.ceil((1 - tokens) / tokensPerMilli);
+    }
+
+    /**
+     * Makes room in a full queue by shedding its lowest priority waiter, if that one has a lower
+     * priority than the given waiter.
+     */
+    private boolean evictLowerThan(Waiter waiter) {
+        Waiter lowest = null;
+        for (Waiter queued : waiters) {
+            if (lowest == null || queued.compareTo(lowest) > 0) {
+                lowest = queued;
+            }
+        }
+        if (lowest == null || lowest.priority.ordinal() <= waiter.priority.ordinal()) {
+            return false;
+        }
+        waiters.remove(lowest);
+        lowest.shed = true;
+        notifyAll();
+        return true;
+    }
+
+    private static final class Waiter implements Comparable<Waiter> {
+        private final AlertPriority priority;
+        private final long arrival;
+        private boolean shed;
+
+        private Waiter(AlertPriority priority, long arrival) {
+            this.priority = priority;
+            this.arrival = arrival;
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            if (priority != other.priority) {
+                return priority.ordinal() - other.priority.ordinal();
+            }
+            return arrival < other.arrival ? -1 : (arrival == other.arrival ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.opsgenie.integration.jenkins;
+
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.HttpHostConnectException;
+
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether and when a failed delivery is attempted again.
+ * <p/>
+ * Delays grow exponentially from the initial delay up to the maximum delay, with the upper half
+ * randomized so that builds failing at the same moment do not retry in lock step. A
+ * {@code Retry-After} sent by OpsGenie is honored. No retry is started that would end after the
+ * total time budget.
+ */
+public final class OpsGenieRetryPolicy {
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final int DEFAULT_INITIAL_DELAY = 500;
+    public static final int DEFAULT_MAX_DELAY = 10000;
+    public static final int DEFAULT_MAX_TOTAL_TIME = 30000;
+
+    /**
+     * Single attempt, used where retrying is done by other means such as the outbox replay.
+     */
+    public static final OpsGenieRetryPolicy NONE = new OpsGenieRetryPolicy(1, 0, 0, DEFAULT_MAX_TOTAL_TIME);
+
+    private static volatile OpsGenieRetryPolicy instance = new OpsGenieRetryPolicy(DEFAULT_MAX_ATTEMPTS,
+            DEFAULT_INITIAL_DELAY, DEFAULT_MAX_DELAY, DEFAULT_MAX_TOTAL_TIME);
+
+    private final int maxAttempts;
+    private final long initialDelay;
+    private final long maxDelay;
+    private final long maxTotalTime;
+
+    public OpsGenieRetryPolicy(int maxAttempts, long initialDelay, long maxDelay, long maxTotalTime) {
+        this.maxAttempts = maxAttempts;
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.maxTotalTime = maxTotalTime;
+    }
+
+    public static OpsGenieRetryPolicy get() {
+        return instance;
+    }
+
+    public static void configure(int maxAttempts, long initialDelay, long maxDelay, long maxTotalTime) {
+        instance = new OpsGenieRetryPolicy(maxAttempts, initialDelay, maxDelay, maxTotalTime);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getMaxTotalTime() {
+        return maxTotalTime;
+    }
+
+    /**
+     * Status codes worth another attempt: OpsGenie is rate limiting or temporarily unavailable.
+     * Any other error status means the alert itself was refused.
+     */
+    public static boolean isRetryable(int statusCode) {
+        return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
+
+    /**
+     * Exceptions worth another attempt: the connection could not be established or broke down,
+     * including a pooled keep-alive connection that the server or a proxy already closed
+     * (connection reset, broken pipe). Errors such as a malformed url or a failed TLS handshake
+     * will fail the same way again.
+     */
+    public static boolean isRetryable(Exception e) {
+        return e instanceof ConnectTimeoutException
+                || e instanceof HttpHostConnectException
+                || e instanceof SocketException
+                || e instanceof NoHttpResponseException
+                || e instanceof SocketTimeoutException
+                || e instanceof UnknownHostException;
+    }
+
+    /**
+     * Returns the delay before the next attempt, or -1 if no further attempt should be made.
+     *
+     * @param attempt         number of attempts made so far
+     * @param retryAfter      delay requested by OpsGenie in milliseconds, 0 if none
+     * @param remainingBudget milliseconds left of the total time budget
+     */
+    public long nextDelay(int attempt, long retryAfter, long remainingBudget) {
+        if (attempt >= maxAttempts) {
+            return -1;
+        }
+
+        long backoff = initialDelay << Math.min(attempt - 1, 30);
+        if (backoff <= 0 || backoff > maxDelay) {
+            backoff = maxDelay;
+        }
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        delay = Math.max(delay, retryAfter);
+
+        return delay < remainingBudget ? delay : -1;
+    }
+}
@@ -0,0 +1,623 @@
+package com.opsgenie.integration.jenkins;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends a serialized payload to the OpsGenie Jenkins integration endpoint.
+ * <p/>
+ * Unlike {@link OpsGenieNotificationService} it does not need the build, so journaled alerts
+ * can be replayed after the build or even the controller is gone.
+ * <p/>
+ * Alerts for the global API URL fail over to the alternate endpoints configured with it within
+ * the same attempt, see {@link OpsGenieEndpoints}.
+ */
+public class OpsGenieWebhookSender {
+    private final org.slf4j.Logger logger = LoggerFactory.getLogger(OpsGenieWebhookSender.class);
+
+    private final DeliveryProfile profile;
+    private final String apiUrl;
+    private final String apiKey;
+    private final AlertPriority priority;
+    private final PrintStream consoleOutputLogger;
+
+    public enum Outcome {
+        /** OpsGenie accepted the alert. */
+        DELIVERED,
+        /** OpsGenie answered but refused the alert, sending it again will not help. */
+        REJECTED,
+        /** OpsGenie could not be reached. */
+        FAILED
+    }
+
+    public OpsGenieWebhookSender(String apiUrl, String apiKey, PrintStream consoleOutputLogger) {
+        this(apiUrl, apiKey, null, consoleOutputLogger);
+    }
+
+    /**
+     * @param priority decides the place of the alert in the {@link OpsGenieRateLimiter} queue,
+     *                 alerts without one are treated as P3 like OpsGenie does
+     */
+    public OpsGenieWebhookSender(String apiUrl, String apiKey, AlertPriority priority,
+                                 PrintStream consoleOutputLogger) {
+        this(DeliveryProfile.get(apiUrl, apiKey, null, null), priority, consoleOutputLogger);
+    }
+
+    /**
+     * @param profile  endpoint and proxy to send the alert to, its tags and teams are not used
+     * @param priority as for {@link #OpsGenieWebhookSender(String, String, AlertPriority, PrintStream)}
+     */
+    public OpsGenieWebhookSender(DeliveryProfile profile, AlertPriority priority, PrintStream consoleOutputLogger) {
+        this.profile = profile;
+        this.apiUrl = profile.getApiUrl();
+        this.apiKey = profile.getApiKey();
+        this.priority = priority;
+        this.consoleOutputLogger = consoleOutputLogger;
+    }
+
+    /**
+     * Sends the payload, journaling it in the {@link OpsGenieOutbox} first when the outbox is
+     * enabled so that it is replayed later if OpsGenie can not be reached now.
+     */
+    public boolean deliver(byte[] payload) {
+        OpsGenieOutbox outbox = OpsGenieOutbox.get();
+        long ticket = OpsGenieOutbox.NO_TICKET;
+        if (outbox != null) {
+            ticket = outbox.append(apiUrl, apiKey, payload);
+        }
+
+        return settle(outbox, ticket, send(payload));
+    }
+
+    /**
+     * Same as {@link #deliver(byte[])}, but returns right away when the non-blocking transport is
+     * selected. Otherwise the payload is sent on the calling thread.
+     */
+    public ListenableFuture<Boolean> deliverAsync(byte[] payload) {
+        final OpsGenieOutbox outbox = OpsGenieOutbox.get();
+        final long ticket = outbox != null ? outbox.append(apiUrl, apiKey, payload) : OpsGenieOutbox.NO_TICKET;
+
+        return Futures.transform(sendAsync(payload, OpsGenieRetryPolicy.get()), new Function<Outcome, Boolean>() {
+            @Override
+            public Boolean apply(Outcome outcome) {
+                return settle(outbox, ticket, outcome);
+            }
+        }, OpsGenieDispatcher.callbacks());
+    }
+
+    private boolean settle(OpsGenieOutbox outbox, long ticket, Outcome outcome) {
+        if (outcome == Outcome.FAILED && ticket == OpsGenieOutbox.NO_TICKET) {
+            consoleOutputLogger.println("Job data could not be sent to OpsGenie and is dropped");
+        }
+        if (outbox != null && ticket != OpsGenieOutbox.NO_TICKET) {
+            if (outcome == Outcome.FAILED) {
+                consoleOutputLogger.println("Alert is kept in the OpsGenie outbox and will be sent again later");
+                outbox.release(ticket);
+            } else {
+                outbox.settle(ticket);
+                if (outcome == Outcome.DELIVERED && outbox.hasBacklog()) {
+                    // OpsGenie is reachable again, drain what piled up while it was not
+                    outbox.scheduleReplay();
+                }
+            }
+        }
+        return outcome == Outcome.DELIVERED;
+    }
+
+    public Outcome send(byte[] payload) {
+        return send(payload, OpsGenieRetryPolicy.get());
+    }
+
+    /**
+     * Sends the payload, retrying transient failures as the given policy allows. Returns
+     * {@link Outcome#FAILED} when OpsGenie stayed unreachable or kept answering with a transient
+     * error status until the policy gave up.
+     */
+    public Outcome send(byte[] payload, OpsGenieRetryPolicy retryPolicy) {
+        if (OpsGenieAsyncHttpClient.get() != null) {
+            try {
+                return sendAsync(payload, retryPolicy).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Outcome.FAILED;
+            } catch (ExecutionException e) {
+                logger.error("Exception while sending webhook: " + e.getMessage());
+                return Outcome.FAILED;
+            }
+        }
+
+        Outcome outcome = sendWithRetries(createEntity(payload), retryPolicy);
+        OpsGenieMetrics.get().recordOutcome(outcome);
+        return outcome;
+    }
+
+    /**
+     * Sends the payload over the non-blocking transport, scheduling retries instead of sleeping
+     * in between. Falls back to sending on the calling thread when the blocking transport is
+     * selected.
+     */
+    public ListenableFuture<Outcome> sendAsync(byte[] payload, OpsGenieRetryPolicy retryPolicy) {
+        OpsGenieAsyncHttpClient client = OpsGenieAsyncHttpClient.get();
+        if (client == null) {
+            return Futures.immediateFuture(send(payload, retryPolicy));
+        }
+
+        AsyncDelivery delivery = new AsyncDelivery(client, createEntity(payload), retryPolicy);
+        delivery.nextAttempt();
+        return delivery.result;
+    }
+
+    /**
+     * Creates the request body once for all attempts, compressed if the payload is large enough.
+     */
+    private HttpEntity createEntity(byte[] payload) {
+        HttpEntity entity = PayloadCompression.get().createEntity(payload);
+        OpsGenieMetrics metrics = OpsGenieMetrics.get();
+        metrics.recordPayloadSize(payload.length);
+        metrics.recordRequestSize(entity.getContentLength());
+        if (logger.isDebugEnabled()) {
+            logger.debug("Payload of " + payload.length + " bytes is sent to " + apiUrl + " as "
+                    + entity.getContentLength() + " bytes" + (entity.getContentEncoding() != null ? " gzipped" : ""));
+        }
+        return entity;
+    }
+
+    private Outcome sendWithRetries(HttpEntity entity, OpsGenieRetryPolicy retryPolicy) {
+        long deadline = System.currentTimeMillis() + retryPolicy.getMaxTotalTime();
+        OpsGenieRateLimiter limiter = OpsGenieRateLimiter.forApiKey(apiKey);
+        for (int attempt = 1; ; attempt++) {
+            // The permit comes first, a circuit breaker let through to probe must see the request
+            if (limiter != null && !acquire(limiter, deadline)) {
+                return Outcome.FAILED;
+            }
+            Iterator<DeliveryProfile> endpoints = endpoints().iterator();
+            DeliveryProfile endpoint = firstAvailable(endpoints);
+            if (endpoint == null) {
+                return Outcome.FAILED;
+            }
+
+            Attempt result = sendWebhookToOpsGenie(endpoint, entity, deadline);
+            while (result.isEndpointFailure() && System.currentTimeMillis() < deadline) {
+                DeliveryProfile next = failOver(endpoint, endpoints);
+                if (next == null) {
+                    break;
+                }
+                endpoint = next;
+                result = sendWebhookToOpsGenie(endpoint, entity, deadline);
+            }
+
+            Outcome outcome = evaluate(result, attempt, deadline, retryPolicy, limiter);
+            if (outcome != null) {
+                return outcome;
+            }
+
+            try {
+                Thread.sleep(result.retryDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Outcome.FAILED;
+            }
+        }
+    }
+
+    /**
+     * Returns the endpoints to send the alert to, healthiest first.
+     */
+    private List<DeliveryProfile> endpoints() {
+        List<String> apiUrls = OpsGenieEndpoints.order(apiUrl);
+        List<DeliveryProfile> endpoints = new ArrayList<>(apiUrls.size());
+        for (String endpointUrl : apiUrls) {
+            endpoints.add(endpointUrl.equals(apiUrl) ? profile : DeliveryProfile.get(endpointUrl, apiKey, null, null));
+        }
+        return endpoints;
+    }
+
+    /**
+     * Returns the endpoint to start an attempt with, or {@code null} if the circuit breakers of
+     * all of them are open. The request must be sent to the returned endpoint, whose circuit
+     * breaker may be waiting for it as its probe.
+     */
+    private DeliveryProfile firstAvailable(Iterator<DeliveryProfile> endpoints) {
+        DeliveryProfile endpoint = nextAvailable(endpoints);
+        if (endpoint == null) {
+            consoleOutputLogger.println("OpsGenie at " + apiUrl + " is unavailable, not sending job data");
+            OpsGenieMetrics.get().recordShortCircuit();
+        }
+        return endpoint;
+    }
+
+    private static DeliveryProfile nextAvailable(Iterator<DeliveryProfile> endpoints) {
+        while (endpoints.hasNext()) {
+            DeliveryProfile endpoint = endpoints.next();
+            OpsGenieCircuitBreaker breaker = OpsGenieCircuitBreaker.forEndpoint(endpoint.getApiUrl());
+            if (breaker == null || breaker.allowRequest()) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the endpoint to send the alert to after the given one failed, or {@code null} if
+     * there is none left.
+     */
+    private DeliveryProfile failOver(DeliveryProfile failed, Iterator<DeliveryProfile> endpoints) {
+        DeliveryProfile next = nextAvailable(endpoints);
+        if (next != null) {
+            consoleOutputLogger.println("OpsGenie at " + failed.getApiUrl() + " failed, sending job data to "
+                    + next.getApiUrl() + " instead");
+            OpsGenieMetrics.get().recordFailover();
+        }
+        return next;
+    }
+
+    /**
+     * Returns the outcome of the delivery after the given attempt, or {@code null} if it is to be
+     * retried after {@link Attempt#retryDelay}.
+     */
+    private Outcome evaluate(Attempt result, int attempt, long deadline, OpsGenieRetryPolicy retryPolicy,
+                             OpsGenieRateLimiter limiter) {
+        if (limiter != null && result.statusCode == 429) {
+            limiter.onRateLimited(result.retryAfter);
+        }
+        if (result.isSuccessful()) {
+            return checkResponse(result.body) ? Outcome.DELIVERED : Outcome.REJECTED;
+        }
+        if (!result.isRetryable()) {
+            return result.statusCode > 0 ? Outcome.REJECTED : Outcome.FAILED;
+        }
+
+        long delay = retryPolicy.nextDelay(attempt, result.retryAfter, deadline - System.currentTimeMillis());
+        if (delay < 0) {
+            if (retryPolicy.getMaxAttempts() > 1) {
+                consoleOutputLogger.println("Giving up sending job data to OpsGenie after " + attempt + " attempts");
+            }
+            return Outcome.FAILED;
+        }
+
+        consoleOutputLogger.println("Retrying to send job data to OpsGenie in " + delay + " ms");
+        OpsGenieMetrics.get().recordRetry();
+        result.retryDelay = delay;
+        return null;
+    }
+
+    private boolean acquire(OpsGenieRateLimiter limiter, long deadline) {
+        boolean acquired;
+        try {
+            acquired = limiter.acquire(priority, deadline - System.currentTimeMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            consoleOutputLogger.println("Request limit of the OpsGenie API key is exhausted, not sending job data");
+            OpsGenieMetrics.get().recordThrottled();
+        }
+        return acquired;
+    }
+
+    private boolean checkResponse(String res) {
+        try {
+            OpsGenieNotificationService.ResponseFromOpsGenie response = OpsGenieJson.RESPONSE_READER.readValue(res);
+            if (StringUtils.isEmpty(response.getError())) {
+                consoleOutputLogger.println("Sending job data to OpsGenie is done");
+                return true;
+            } else {
+                consoleOutputLogger.println("Response status is failed");
+                logger.error("Response status is failed");
+                return false;
+            }
+        } catch (Exception e) {
+            e.printStackTrace(consoleOutputLogger);
+            logger.error("Exception while checking response" + e.getMessage());
+        }
+        return !res.isEmpty();
+    }
+
+    private Attempt sendWebhookToOpsGenie(DeliveryProfile endpoint, HttpEntity entity, long deadline) {
+        long start = System.nanoTime();
+        try {
+            OpsGenieHttpClient client = OpsGenieHttpClient.get();
+            // Timeouts are capped so that a single attempt does not outlive the retry budget
+            HttpPost post = createRequest(endpoint, entity,
+                    client.requestConfig(deadline - System.currentTimeMillis()));
+
+            consoleOutputLogger.println("Sending job data to OpsGenie...");
+            start = System.nanoTime();
+            CloseableHttpResponse response = client.execute(post);
+            try {
+                return toAttempt(endpoint, response, System.nanoTime() - start);
+            } finally {
+                // Releases the connection back to the shared pool
+                response.close();
+            }
+        } catch (Exception e) {
+            return toAttempt(endpoint, e, System.nanoTime() - start);
+        }
+    }
+
+    private HttpPost createRequest(DeliveryProfile endpoint, HttpEntity entity, RequestConfig.Builder config)
+            throws URISyntaxException {
+        HttpPost post = new HttpPost(endpoint.getEndpoint());
+        // Content type and encoding headers are taken from the entity
+        post.setEntity(entity);
+
+        if (endpoint.getProxy() != null) {
+            // A proxy is configured and the host of opsgenie is not excluded from it
+            config.setProxy(endpoint.getProxy());
+        }
+        post.setConfig(config.build());
+        return post;
+    }
+
+    private Attempt toAttempt(DeliveryProfile endpoint, HttpResponse response, long nanos) throws IOException {
+        HttpEntity entity = response.getEntity();
+        int statusCode = response.getStatusLine().getStatusCode();
+        String body = entity != null ? EntityUtils.toString(entity) : "";
+        if (statusCode >= 300) {
+            consoleOutputLogger.println("OpsGenie responded with status " + statusCode);
+            logger.error("OpsGenie responded with status " + statusCode + ": " + body);
+        }
+        return record(endpoint, new Attempt(statusCode, body, retryAfter(response.getFirstHeader("Retry-After")),
+                null), nanos);
+    }
+
+    private Attempt toAttempt(DeliveryProfile endpoint, Exception e, long nanos) {
+        e.printStackTrace(consoleOutputLogger);
+        logger.error("Exception while sending webhook: " + e.getMessage());
+        return record(endpoint, new Attempt(0, "", 0, e), nanos);
+    }
+
+    /**
+     * Counts the attempt in the metrics, the circuit breaker and the health of its endpoint.
+     *
+     * @param nanos round trip time of the request
+     */
+    private Attempt record(DeliveryProfile endpoint, Attempt result, long nanos) {
+        OpsGenieMetrics.get().recordAttempt(endpoint.getApiUrl(), result.statusCode, nanos);
+        OpsGenieEndpoints.record(endpoint.getApiUrl(), result.isEndpointFailure(), nanos);
+        OpsGenieCircuitBreaker breaker = OpsGenieCircuitBreaker.forEndpoint(endpoint.getApiUrl());
+        if (breaker != null) {
+            result.recordIn(breaker);
+        }
+        return result;
+    }
+
+    /**
+     * Parses a {@code Retry-After} header given either in seconds or as an http date.
+     */
+    private static long retryAfter(Header header) {
+        if (header == null || StringUtils.isBlank(header.getValue())) {
+            return 0;
+        }
+
+        String value = header.getValue().trim();
+        if (StringUtils.isNumeric(value)) {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+        }
+        Date date = DateUtils.parseDate(value);
+        return date != null ? Math.max(0, date.getTime() - System.currentTimeMillis()) : 0;
+    }
+
+    private static final class Attempt {
+        private final int statusCode;
+        private final String body;
+        private final long retryAfter;
+        private final Exception exception;
+        private long retryDelay;
+
+        private Attempt(int statusCode, String body, long retryAfter, Exception exception) {
+            this.statusCode = statusCode;
+            this.body = body;
+            this.retryAfter = retryAfter;
+            this.exception = exception;
+        }
+
+        boolean isSuccessful() {
+            return exception == null && statusCode >= 200 && statusCode < 300;
+        }
+
+        /**
+         * Only outcomes telling that the endpoint itself is in trouble count as failures, a
+         * refused alert or rate limiting means OpsGenie is up.
+         */
+        boolean isEndpointFailure() {
+            return exception != null
+                    ? OpsGenieRetryPolicy.isRetryable(exception)
+                    : statusCode >= 500 || statusCode == 408;
+        }
+
+        void recordIn(OpsGenieCircuitBreaker breaker) {
+            if (isEndpointFailure()) {
+                breaker.recordFailure();
+            } else if (exception != null) {
+                breaker.recordIgnored();
+            } else {
+                breaker.recordSuccess();
+            }
+        }
+
+        boolean isRetryable() {
+            return exception != null
+                    ? OpsGenieRetryPolicy.isRetryable(exception)
+                    : OpsGenieRetryPolicy.isRetryable(statusCode);
+        }
+    }
+
+    /**
+     * One delivery over the non-blocking transport. Each attempt is started from the thread that
+     * completed the previous one, or from the timer when it is a retry, so no thread waits for
+     * OpsGenie in the meantime.
+     */
+    private final class AsyncDelivery implements FutureCallback<HttpResponse> {
+        private final SettableFuture<Outcome> result = SettableFuture.create();
+        private final OpsGenieAsyncHttpClient client;
+        private final HttpEntity entity;
+        private final OpsGenieRetryPolicy retryPolicy;
+        private final long deadline;
+        private final OpsGenieRateLimiter limiter;
+        private Iterator<DeliveryProfile> endpoints;
+        private DeliveryProfile endpoint;
+        private int attempt;
+        private long start;
+
+        AsyncDelivery(OpsGenieAsyncHttpClient client, HttpEntity entity, OpsGenieRetryPolicy retryPolicy) {
+            this.client = client;
+            this.entity = entity;
+            this.retryPolicy = retryPolicy;
+            this.deadline = System.currentTimeMillis() + retryPolicy.getMaxTotalTime();
+            this.limiter = OpsGenieRateLimiter.forApiKey(apiKey);
+        }
+
+        void nextAttempt() {
+            attempt++;
+            if (limiter != null && !limiter.tryAcquire()) {
+                // Waiting for the rate limiter blocks, which is left to a delivery worker. Should
+                // the queue be full, the attempt fails rather than blocking the calling thread.
+                OpsGenieDispatcher.get().tryExecute(new FutureTask<Void>(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (acquire(limiter, deadline)) {
+                            start();
+                        } else {
+                            complete(Outcome.FAILED);
+                        }
+                    }
+                }, null) {
+                    @Override
+                    protected void done() {
+                        if (isCancelled()) {
+                            complete(Outcome.FAILED);
+                        }
+                    }
+                });
+                return;
+            }
+            start();
+        }
+
+        /**
+         * Starts the attempt once it holds its rate limiter permit, so that it is certain to be
+         * sent should a circuit breaker let it through.
+         */
+        private void start() {
+            endpoints = endpoints().iterator();
+            endpoint = firstAvailable(endpoints);
+            if (endpoint == null) {
+                complete(Outcome.FAILED);
+                return;
+            }
+            execute();
+        }
+
+        private void execute() {
+            start = System.nanoTime();
+            try {
+                HttpPost post = createRequest(endpoint, entity,
+                        client.requestConfig(deadline - System.currentTimeMillis()));
+                consoleOutputLogger.println("Sending job data to OpsGenie...");
+                start = System.nanoTime();
+                client.execute(post, this);
+            } catch (Exception e) {
+                failed(e);
+            }
+        }
+
+        /*
+         * The callbacks run on the I/O reactor threads of the shared client. Everything that logs,
+         * reads the response or starts the next request is handed over to the dispatcher.
+         */
+
+        @Override
+        public void completed(final HttpResponse response) {
+            final long nanos = System.nanoTime() - start;
+            OpsGenieDispatcher.callbacks().execute(new Runnable() {
+                @Override
+                public void run() {
+                    Attempt received;
+                    try {
+                        received = toAttempt(endpoint, response, nanos);
+                    } catch (IOException e) {
+                        received = toAttempt(endpoint, e, nanos);
+                    }
+                    handle(received);
+                }
+            });
+        }
+
+        @Override
+        public void failed(final Exception e) {
+            final long nanos = System.nanoTime() - start;
+            OpsGenieDispatcher.callbacks().execute(new Runnable() {
+                @Override
+                public void run() {
+                    handle(toAttempt(endpoint, e, nanos));
+                }
+            });
+        }
+
+        @Override
+        public void cancelled() {
+            // Tells nothing about the endpoint, but a probe must not leave its breaker half open
+            OpsGenieCircuitBreaker breaker = OpsGenieCircuitBreaker.forEndpoint(endpoint.getApiUrl());
+            if (breaker != null) {
+                breaker.recordIgnored();
+            }
+            complete(Outcome.FAILED);
+        }
+
+        private void handle(Attempt result) {
+            if (result.isEndpointFailure() && System.currentTimeMillis() < deadline) {
+                DeliveryProfile next = failOver(endpoint, endpoints);
+                if (next != null) {
+                    // Same attempt, so neither a retry delay nor another rate limiter permit
+                    endpoint = next;
+                    execute();
+                    return;
+                }
+            }
+
+            Outcome outcome = evaluate(result, attempt, deadline, retryPolicy, limiter);
+            if (outcome != null) {
+                complete(outcome);
+                return;
+            }
+
+            OpsGenieDispatcher.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    nextAttempt();
+                }
+            }, result.retryDelay, TimeUnit.MILLISECONDS);
+        }
+
+        private void complete(Outcome outcome) {
+            OpsGenieMetrics.get().recordOutcome(outcome);
+            result.set(outcome);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.opsgenie.integration.jenkins;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Turns serialized payloads into request bodies, gzip compressing those of at least the
+ * threshold size when compression is enabled. Small payloads are sent as they are, compressing
+ * them costs more than it saves.
+ */
+public final class PayloadCompression {
+    public static final int DEFAULT_THRESHOLD = 8 * 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger(PayloadCompression.class);
+
+    private static volatile PayloadCompression instance = new PayloadCompression(false, DEFAULT_THRESHOLD);
+
+    private final boolean enabled;
+    private final int threshold;
+
+    public PayloadCompression(boolean enabled, int threshold) {
+        this.enabled = enabled;
+        this.threshold = threshold;
+    }
+
+    public static PayloadCompression get() {
+        return instance;
+    }
+
+    public static void configure(boolean enabled, int threshold) {
+        instance = new PayloadCompression(enabled, threshold);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Size in bytes from which payloads are compressed.
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Returns a repeatable JSON request body holding the payload, so that it can be sent again
+     * on retries without compressing it again.
+     */
+    public HttpEntity createEntity(byte[] payload) {
+        if (enabled && payload.length >= threshold) {
+            try {
+                ByteArrayEntity entity = new ByteArrayEntity(gzip(payload), ContentType.APPLICATION_JSON);
+                entity.setContentEncoding("gzip");
+                return entity;
+            } catch (IOException e) {
+                logger.warn("Could not compress payload, sending it uncompressed: " + e.getMessage());
+            }
+        }
+        return new ByteArrayEntity(payload, ContentType.APPLICATION_JSON);
+    }
+
+    private static byte[] gzip(byte[] payload) throws IOException {
+        // JSON with repetitive test names and commit messages typically shrinks to a fifth or less
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, payload.length / 4));
+        GZIPOutputStream out = new GZIPOutputStream(compressed);
+        try {
+            out.write(payload);
+        } finally {
+            out.close();
+        }
+        return compressed.toByteArray();
+    }
+}
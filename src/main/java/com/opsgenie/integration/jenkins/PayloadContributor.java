@@ -0,0 +1,161 @@
+package com.opsgenie.integration.jenkins;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import hudson.model.AbstractBuild;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.User;
+import hudson.tasks.test.AbstractTestResultAction;
+import jenkins.model.Jenkins;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Adds fields to the post build alert payload.
+ * <p/>
+ * Contributors are run by the {@link PayloadEnricher} concurrently on small pools of their own,
+ * each within its time budget. A contributor that does not finish in time, or fails, is left out and
+ * the alert is sent without its fields. Implementations are registered with {@link Extension},
+ * must be thread safe and should only read from the build.
+ */
+public abstract class PayloadContributor implements ExtensionPoint {
+    private static final List<PayloadContributor> BUILT_IN = Collections.unmodifiableList(Arrays.asList(
+            new TestResults(), new Changes(), new Culprits(), new BuildVariables()));
+
+    /**
+     * Name under which an omission of the contributor is reported.
+     */
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * Returns the milliseconds the contributor may take, or 0 to use the budget of the global
+     * configuration.
+     */
+    public long getTimeBudget() {
+        return 0;
+    }
+
+    /**
+     * Adds the fields of this contributor to the given map, which is not shared with other
+     * contributors. The fields are only added to the payload if this returns in time.
+     */
+    public abstract void contribute(Run<?, ?> build, AlertProperties alertProperties, Map<String, Object> fields)
+            throws Exception;
+
+    /**
+     * Called once the fields of this contributor were added to the payload, which is not the
+     * case if it did not finish in time. Does nothing by default.
+     */
+    public void included(Run<?, ?> build, Map<String, Object> fields) {
+    }
+
+    public static List<PayloadContributor> all() {
+        if (Jenkins.getInstanceOrNull() == null) {
+            // Driven outside of Jenkins, such as by the load test harness
+            return BUILT_IN;
+        }
+        return ExtensionList.lookup(PayloadContributor.class);
+    }
+
+    @Extension
+    public static final class TestResults extends PayloadContributor {
+        @Override
+        public void contribute(Run<?, ?> build, AlertProperties alertProperties, Map<String, Object> fields) {
+            AbstractTestResultAction<?> testResult = build.getAction(AbstractTestResultAction.class);
+            if (testResult == null) {
+                return;
+            }
+
+            StringBuilder descriptionBuilder = new StringBuilder();
+            String passedTestCount = Integer.toString(testResult.getTotalCount() - testResult.getFailCount() - testResult.getSkipCount());
+            fields.put("passedTestCount", passedTestCount);
+            String failedTestCount = Integer.toString(testResult.getFailCount());
+            fields.put("failedTestCount", failedTestCount);
+            String skippedTestCount = Integer.toString(testResult.getSkipCount());
+            fields.put("skippedTestCount", skippedTestCount);
+
+            if (alertProperties.isNewFailuresOnly()) {
+                FailedTestsCache.Diff diff = FailedTestsCache.get().diff(build, testResult.getFailedTests());
+                fields.put("newFailedTestCount", Integer.toString(diff.getNewFailures().size()));
+                fields.put("stillFailingTestCount", Integer.toString(diff.getStillFailingCount()));
+                fields.put("fixedTestCount", Integer.toString(diff.getFixedCount()));
+
+                if (build.getResult() == Result.UNSTABLE || build.getResult() == Result.FAILURE) {
+                    descriptionBuilder.append(PayloadFormatter.formatFailedTests(diff.getNewFailures(), PayloadLimits.get()));
+                    fields.put("failedTests", descriptionBuilder);
+                }
+            } else if (build.getResult() == Result.UNSTABLE || build.getResult() == Result.FAILURE) {
+                descriptionBuilder.append(PayloadFormatter.formatFailedTests(testResult.getFailedTests(), PayloadLimits.get()));
+                fields.put("failedTests", descriptionBuilder);
+            }
+        }
+
+        @Override
+        public void included(Run<?, ?> build, Map<String, Object> fields) {
+            // The failures are only known to the next build once this alert reported them
+            FailedTestsCache.get().commit(build);
+        }
+    }
+
+    @Extension
+    public static final class Changes extends PayloadContributor {
+        @Override
+        public void contribute(Run<?, ?> build, AlertProperties alertProperties, Map<String, Object> fields) {
+            if (build instanceof AbstractBuild) {
+                fields.put("commitList", PayloadFormatter.formatCommitList(
+                        ((AbstractBuild<?, ?>) build).getChangeSet(), PayloadLimits.get()));
+            }
+        }
+    }
+
+    @Extension
+    public static final class Culprits extends PayloadContributor {
+        @Override
+        public void contribute(Run<?, ?> build, AlertProperties alertProperties, Map<String, Object> fields) {
+            if (build instanceof AbstractBuild) {
+                if (build.getResult() == Result.FAILURE || build.getResult() == Result.UNSTABLE) {
+                    // Walks back through the previous failed builds to collect everyone involved
+                    Set<User> culprits = ((AbstractBuild<?, ?>) build).getCulprits();
+                    if (!culprits.isEmpty()) {
+                        fields.put("culprits", formatCulprits(culprits));
+                    }
+                }
+            }
+        }
+
+        private String formatCulprits(Set<User> culprits) {
+            StringBuilder culpritsBuilder = new StringBuilder();
+            for (User culprit : culprits) {
+                culpritsBuilder.append(culprit.getFullName()).append(",");
+            }
+            return culpritsBuilder.toString();
+        }
+    }
+
+    @Extension
+    public static final class BuildVariables extends PayloadContributor {
+        @Override
+        public void contribute(Run<?, ?> build, AlertProperties alertProperties, Map<String, Object> fields) {
+            fields.put("params", formatBuildVariables(build));
+        }
+
+        private String formatBuildVariables(Run<?, ?> build) {
+            StringBuilder buildVariablesBuilder = new StringBuilder();
+            if (build instanceof AbstractBuild) {
+                Map<String, String> buildVariables = ((AbstractBuild<?, ?>) build).getBuildVariables();
+                for (Map.Entry<String, String> entry : buildVariables.entrySet()) {
+                    buildVariablesBuilder.append(entry.getKey()).append(" -> ").append(entry.getValue()).append("\n");
+                }
+            }
+            return buildVariablesBuilder.toString();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.opsgenie.integration.jenkins;
+
+import hudson.init.Terminator;
+import hudson.model.Run;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs the {@link PayloadContributor}s of a post build alert concurrently. Every contributor has
+ * a small bounded pool of its own shared by all builds, so a contributor that hangs only holds
+ * up later runs of itself and never the other contributors.
+ * <p/>
+ * The time budget of a contributor starts when it begins running. One that waits for a pool
+ * thread longer than its budget, or is still running when its budget runs out, is left out; it
+ * keeps its pool thread until it returns. An alert thus waits for at most twice the largest
+ * budget no matter how many contributors there are.
+ * <p/>
+ * At most {@link #MAX_QUEUED_RUNS} runs of a contributor wait for its pool. When a hanging
+ * contributor piles up more than that, it is left out of further alerts right away until its
+ * pool catches up.
+ */
+public final class PayloadEnricher {
+    public static final int DEFAULT_PARALLELISM = 4;
+    public static final int DEFAULT_TIME_BUDGET = 2000;
+
+    static final int MAX_QUEUED_RUNS = 32;
+
+    private static final long SHUTDOWN_GRACE_SECONDS = 5;
+
+    private static final Logger logger = LoggerFactory.getLogger(PayloadEnricher.class);
+
+    private static volatile PayloadEnricher instance;
+
+    private final ConcurrentMap<String, ThreadPoolExecutor> pools = new ConcurrentHashMap<>();
+    private final int parallelism;
+    private final long timeBudget;
+
+    private PayloadEnricher(int parallelism, long timeBudget) {
+        this.parallelism = parallelism;
+        this.timeBudget = timeBudget;
+    }
+
+    public static PayloadEnricher get() {
+        PayloadEnricher current = instance;
+        if (current == null) {
+            synchronized (PayloadEnricher.class) {
+                current = instance;
+                if (current == null) {
+                    current = new PayloadEnricher(DEFAULT_PARALLELISM, DEFAULT_TIME_BUDGET);
+                    instance = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @param parallelism maximum number of builds running the same contributor at the same time
+     * @param timeBudget  milliseconds a contributor may take unless it has a budget of its own
+     */
+    public static synchronized void configure(int parallelism, int timeBudget) {
+        PayloadEnricher previous = instance;
+        instance = new PayloadEnricher(parallelism, timeBudget);
+        if (previous != null) {
+            for (ThreadPoolExecutor pool : previous.pools.values()) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Terminator
+    public static synchronized void shutdown() throws InterruptedException {
+        if (instance != null) {
+            for (ThreadPoolExecutor pool : instance.pools.values()) {
+                pool.shutdownNow();
+            }
+            for (ThreadPoolExecutor pool : instance.pools.values()) {
+                pool.awaitTermination(SHUTDOWN_GRACE_SECONDS, TimeUnit.SECONDS);
+            }
+            instance = null;
+        }
+    }
+
+    /**
+     * Runs the contributors and adds the fields of those that finished in time to the payload.
+     * Returns the names of the contributors that were left out.
+     */
+    public List<String> enrich(Map<String, Object> payload,
+                               final Run<?, ?> build,
+                               final AlertProperties alertProperties,
+                               List<PayloadContributor> contributors) {
+        long submitted = System.nanoTime();
+        List<Contribution> tasks = new ArrayList<>(contributors.size());
+        for (final PayloadContributor contributor : contributors) {
+            Contribution task = new Contribution(new Callable<Map<String, Object>>() {
+                @Override
+                public Map<String, Object> call() throws Exception {
+                    Map<String, Object> fields = new HashMap<>();
+                    contributor.contribute(build, alertProperties, fields);
+                    return fields;
+                }
+            });
+            ThreadPoolExecutor pool = poolOf(contributor);
+            try {
+                pool.execute(task);
+                task.pool = pool;
+            } catch (RejectedExecutionException e) {
+                if (pool.isShutdown()) {
+                    logger.warn(contributor.getName() + " was not run, the enricher was reconfigured");
+                } else {
+                    logger.warn(contributor.getName() + " was not run, " + MAX_QUEUED_RUNS
+                            + " earlier runs are still waiting for it");
+                }
+                task.cancel(false);
+            }
+            tasks.add(task);
+        }
+
+        List<String> omitted = new ArrayList<>();
+        for (int i = 0; i < contributors.size(); i++) {
+            PayloadContributor contributor = contributors.get(i);
+            Contribution task = tasks.get(i);
+            long budget = contributor.getTimeBudget() > 0 ? contributor.getTimeBudget() : timeBudget;
+            try {
+                Map<String, Object> fields = task.await(submitted, budget);
+                payload.putAll(fields);
+                contributor.included(build, fields);
+                continue;
+            } catch (TimeoutException e) {
+                logger.warn(contributor.getName() + " did not finish within " + budget + " ms");
+            } catch (ExecutionException e) {
+                logger.error("Exception in payload contributor " + contributor.getName() + ": "
+                        + e.getCause().getMessage());
+            } catch (CancellationException e) {
+                // Already logged when it was refused
+            } catch (InterruptedException e) {
+                // Leaves out this and, since the flag stays set, all remaining contributors
+                Thread.currentThread().interrupt();
+            }
+            // Keeps a contributor that did not start yet from taking a pool thread for nothing
+            task.abandon();
+            omitted.add(contributor.getName());
+            OpsGenieMetrics.get().recordOmission(contributor.getName());
+        }
+        return omitted;
+    }
+
+    /**
+     * Returns the number of runs of the contributor waiting for a pool thread.
+     */
+    int getQueuedRuns(PayloadContributor contributor) {
+        ThreadPoolExecutor pool = pools.get(contributor.getClass().getName());
+        return pool != null ? pool.getQueue().size() : 0;
+    }
+
+    private ThreadPoolExecutor poolOf(PayloadContributor contributor) {
+        // Display names of contributors from different plugins may clash, their classes do not
+        String key = contributor.getClass().getName();
+        ThreadPoolExecutor pool = pools.get(key);
+        if (pool == null) {
+            ThreadPoolExecutor created = new ThreadPoolExecutor(parallelism, parallelism, 60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(MAX_QUEUED_RUNS),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "OpsGenie " + contributor.getName()));
+            created.allowCoreThreadTimeOut(true);
+            pool = pools.putIfAbsent(key, created);
+            if (pool == null) {
+                pool = created;
+            } else {
+                created.shutdown();
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * A contributor run that remembers when it got a pool thread.
+     */
+    private static final class Contribution extends FutureTask<Map<String, Object>> {
+        private volatile boolean started;
+        private volatile long startedAt;
+        private ThreadPoolExecutor pool;
+
+        Contribution(Callable<Map<String, Object>> callable) {
+            super(callable);
+        }
+
+        @Override
+        public void run() {
+            startedAt = System.nanoTime();
+            started = true;
+            super.run();
+        }
+
+        /**
+         * Cancels the run unless it already started and takes it out of the queue of its pool,
+         * where a cancelled run would otherwise stay until a pool thread gets to it.
+         */
+        void abandon() {
+            if (cancel(false) && pool != null) {
+                pool.remove(this);
+            }
+        }
+
+        /**
+         * Waits for the contributor to start within its budget, then for its budget from then.
+         */
+        Map<String, Object> await(long submitted, long budgetMillis)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            long budget = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+            while (true) {
+                boolean running = started;
+                long deadline = (running ? startedAt : submitted) + budget;
+                try {
+                    return get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    if (running || !started) {
+                        throw e;
+                    }
+                    // Got a thread in the meantime, its own budget counts from then
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.opsgenie.integration.jenkins;
+
+import hudson.scm.ChangeLogSet;
+import hudson.tasks.test.TestResult;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Formats the failed test and changelog sections of the post build payload.
+ * <p/>
+ * Each section is bounded by {@link PayloadLimits}: formatting stops once the section is full,
+ * entries are truncated and the remainder is summarized as "+N more", so that the payload size
+ * stays the same no matter how many tests failed or how many commits went into the build. The
+ * size of a section is counted in bytes as sent, encoded as UTF-8.
+ */
+public final class PayloadFormatter {
+
+    private PayloadFormatter() {
+    }
+
+    public static String formatCommitList(ChangeLogSet<? extends ChangeLogSet.Entry> changeLogSet,
+                                          PayloadLimits limits) {
+        if (changeLogSet.isEmptySet()) {
+            return "No changes.\n\n";
+        }
+
+        Section section = new Section(limits);
+        Iterator<? extends ChangeLogSet.Entry> entries = changeLogSet.iterator();
+        while (entries.hasNext() && !section.isFull()) {
+            ChangeLogSet.Entry entry = entries.next();
+            section.add(StringUtils.abbreviate(entry.getMsg(), limits.getMaxEntryLength())
+                    + " - <strong>" + entry.getAuthor().getDisplayName() + "</strong><br>\n");
+        }
+        while (entries.hasNext()) {
+            // Counting is cheap compared to formatting, the entries are not looked at
+            entries.next();
+            section.omit(1);
+        }
+        return section.toString("changes");
+    }
+
+    public static String formatFailedTests(List<? extends TestResult> failedTests, PayloadLimits limits) {
+        Section section = new Section(limits);
+        for (TestResult failedTest : failedTests) {
+            if (section.isFull()) {
+                break;
+            }
+
+            StringBuilder entry = new StringBuilder()
+                    .append(String.format("<strong>%s</strong>%n",
+                            StringUtils.abbreviate(failedTest.getFullName(), limits.getMaxEntryLength())));
+            String errorDetails = failedTest.getErrorDetails();
+            if (StringUtils.isNotBlank(errorDetails)) {
+                entry.append(StringUtils.abbreviate(errorDetails, limits.getMaxEntryLength()));
+            }
+            entry.append("\n\n");
+            section.add(entry);
+        }
+        section.omit(failedTests.size() - section.entries - section.omitted);
+        return section.toString("failed tests");
+    }
+
+    /**
+     * Accumulates entries until either the entry count or the size budget is exhausted.
+     */
+    static final class Section {
+        private final StringBuilder builder = new StringBuilder();
+        private final PayloadLimits limits;
+        private int bytes;
+        private int entries;
+        private int omitted;
+
+        Section(PayloadLimits limits) {
+            this.limits = limits;
+        }
+
+        boolean isFull() {
+            return omitted > 0 || entries >= limits.getMaxEntries() || bytes >= limits.getMaxSectionSize();
+        }
+
+        void add(CharSequence entry) {
+            int size = utf8Length(entry);
+            if (isFull() || bytes + size > limits.getMaxSectionSize()) {
+                omitted++;
+                return;
+            }
+            builder.append(entry);
+            bytes += size;
+            entries++;
+        }
+
+        void omit(int count) {
+            omitted += count;
+        }
+
+        String toString(String noun) {
+            if (omitted > 0) {
+                builder.append("+").append(omitted).append(" more ").append(noun).append("\n");
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Number of bytes of the text encoded as UTF-8, without encoding it.
+     */
+    static int utf8Length(CharSequence text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isSurrogate(c)) {
+                // Each half of a pair takes two of the four bytes of the code point
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,53 @@
+package com.opsgenie.integration.jenkins;
+
+/**
+ * Size limits of the variable length sections of the payload.
+ */
+public final class PayloadLimits {
+    public static final int DEFAULT_MAX_SECTION_SIZE = 32 * 1024;
+    public static final int DEFAULT_MAX_ENTRIES = 100;
+    public static final int DEFAULT_MAX_ENTRY_LENGTH = 2000;
+
+    private static volatile PayloadLimits instance =
+            new PayloadLimits(DEFAULT_MAX_SECTION_SIZE, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_ENTRY_LENGTH);
+
+    private final int maxSectionSize;
+    private final int maxEntries;
+    private final int maxEntryLength;
+
+    public PayloadLimits(int maxSectionSize, int maxEntries, int maxEntryLength) {
+        this.maxSectionSize = maxSectionSize;
+        this.maxEntries = maxEntries;
+        // Abbreviating needs room for the ellipsis
+        this.maxEntryLength = Math.max(4, maxEntryLength);
+    }
+
+    public static PayloadLimits get() {
+        return instance;
+    }
+
+    public static void configure(int maxSectionSize, int maxEntries, int maxEntryLength) {
+        instance = new PayloadLimits(maxSectionSize, maxEntries, maxEntryLength);
+    }
+
+    /**
+     * Maximum number of bytes of a section, encoded as UTF-8.
+     */
+    public int getMaxSectionSize() {
+        return maxSectionSize;
+    }
+
+    /**
+     * Maximum number of entries, such as failed tests, listed in a section.
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Maximum number of characters of a single commit message, test name or test error.
+     */
+    public int getMaxEntryLength() {
+        return maxEntryLength;
+    }
+}
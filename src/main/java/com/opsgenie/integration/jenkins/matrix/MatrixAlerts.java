@@ -0,0 +1,60 @@
+package com.opsgenie.integration.jenkins.matrix;
+
+import com.opsgenie.integration.jenkins.OpsGenieNotifier;
+import hudson.matrix.MatrixBuild;
+import hudson.matrix.MatrixRun;
+import hudson.model.Run;
+import jenkins.model.Jenkins;
+
+/**
+ * Support for matrix projects, whose plugin is an optional dependency. Its classes are only
+ * touched once the plugin is known to be installed.
+ */
+public final class MatrixAlerts {
+    /**
+     * Number of failed cells listed by name in the alert of a matrix build.
+     */
+    public static final int DEFAULT_WORST_CELLS = 10;
+
+    private MatrixAlerts() {
+    }
+
+    /**
+     * Returns {@code true} if the build is the build of a single cell of a matrix build.
+     */
+    public static boolean isCell(Run<?, ?> build) {
+        return isInstalled() && Cells.isCell(build);
+    }
+
+    /**
+     * Returns the notifier that alerts for the whole matrix build, or {@code null} if the build
+     * is no matrix build or its cells alert on their own.
+     */
+    public static OpsGenieNotifier aggregatingNotifier(Run<?, ?> build) {
+        return isInstalled() ? Cells.aggregatingNotifier(build) : null;
+    }
+
+    static boolean isInstalled() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        return jenkins != null && jenkins.getPlugin("matrix-project") != null;
+    }
+
+    /**
+     * Kept apart so that {@link MatrixRun} and {@link MatrixBuild} are only loaded when it is
+     * called.
+     */
+    private static final class Cells {
+        static boolean isCell(Run<?, ?> build) {
+            return build instanceof MatrixRun;
+        }
+
+        static OpsGenieNotifier aggregatingNotifier(Run<?, ?> build) {
+            if (!(build instanceof MatrixBuild)) {
+                return null;
+            }
+            OpsGenieNotifier notifier = ((MatrixBuild) build).getProject().getPublishersList()
+                    .get(OpsGenieNotifier.class);
+            return notifier != null && notifier.isEnable() && notifier.isAggregateMatrix() ? notifier : null;
+        }
+    }
+}
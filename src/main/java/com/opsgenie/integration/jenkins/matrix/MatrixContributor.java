@@ -0,0 +1,120 @@
+package com.opsgenie.integration.jenkins.matrix;
+
+import com.opsgenie.integration.jenkins.AlertProperties;
+import com.opsgenie.integration.jenkins.OpsGenieNotifier;
+import com.opsgenie.integration.jenkins.PayloadContributor;
+import hudson.Extension;
+import hudson.matrix.Axis;
+import hudson.matrix.MatrixBuild;
+import hudson.matrix.MatrixRun;
+import hudson.model.Result;
+import hudson.model.Run;
+import jenkins.model.Jenkins;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Summarizes the cells of a matrix build in its alert: how many cells failed, how many failed
+ * for every value of every axis, and the worst cells by name. Together with aggregation enabled
+ * on the notifier, a matrix build sends one alert however many cells it has.
+ * <p/>
+ * Only registered when the matrix project plugin is installed.
+ */
+@Extension(optional = true)
+public class MatrixContributor extends PayloadContributor {
+
+    @Override
+    public void contribute(Run<?, ?> build, AlertProperties alertProperties, Map<String, Object> fields) {
+        if (!(build instanceof MatrixBuild)) {
+            return;
+        }
+
+        MatrixBuild matrixBuild = (MatrixBuild) build;
+        Map<String, Map<String, int[]>> failuresByAxis = new LinkedHashMap<>();
+        for (Axis axis : matrixBuild.getParent().getAxes()) {
+            Map<String, int[]> failuresByValue = new LinkedHashMap<>();
+            for (String value : axis.getValues()) {
+                failuresByValue.put(value, new int[1]);
+            }
+            failuresByAxis.put(axis.getName(), failuresByValue);
+        }
+
+        List<MatrixRun> cells = matrixBuild.getExactRuns();
+        List<MatrixRun> failedCells = new ArrayList<>();
+        int unstableCells = 0;
+        for (MatrixRun cell : cells) {
+            Result result = cell.getResult();
+            if (result == null || !result.isWorseThan(Result.SUCCESS)) {
+                continue;
+            }
+            if (result == Result.UNSTABLE) {
+                unstableCells++;
+            }
+            failedCells.add(cell);
+
+            for (Map.Entry<String, String> axisValue : cell.getParent().getCombination().entrySet()) {
+                Map<String, int[]> failuresByValue = failuresByAxis.get(axisValue.getKey());
+                if (failuresByValue == null) {
+                    continue;
+                }
+                int[] count = failuresByValue.get(axisValue.getValue());
+                if (count == null) {
+                    // The axis changed since the cell was built
+                    count = new int[1];
+                    failuresByValue.put(axisValue.getValue(), count);
+                }
+                count[0]++;
+            }
+        }
+
+        fields.put("cellCount", Integer.toString(cells.size()));
+        fields.put("failedCellCount", Integer.toString(failedCells.size() - unstableCells));
+        fields.put("unstableCellCount", Integer.toString(unstableCells));
+        fields.put("axisFailures", formatAxisFailures(failuresByAxis));
+        fields.put("worstCells", formatWorstCells(failedCells, getWorstCells()));
+    }
+
+    private static String formatAxisFailures(Map<String, Map<String, int[]>> failuresByAxis) {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Map<String, int[]>> axis : failuresByAxis.entrySet()) {
+            List<String> values = new ArrayList<>();
+            for (Map.Entry<String, int[]> value : axis.getValue().entrySet()) {
+                values.add(value.getKey() + "=" + value.getValue()[0]);
+            }
+            builder.append(axis.getKey()).append(": ").append(StringUtils.join(values, ", ")).append("\n");
+        }
+        return builder.toString();
+    }
+
+    private static String formatWorstCells(List<MatrixRun> failedCells, int worstCells) {
+        Collections.sort(failedCells, new Comparator<MatrixRun>() {
+            @Override
+            public int compare(MatrixRun first, MatrixRun second) {
+                int byResult = second.getResult().ordinal - first.getResult().ordinal;
+                return byResult != 0 ? byResult : first.getParent().getName().compareTo(second.getParent().getName());
+            }
+        });
+
+        StringBuilder builder = new StringBuilder();
+        for (MatrixRun cell : failedCells.subList(0, Math.min(worstCells, failedCells.size()))) {
+            builder.append(cell.getParent().getName()).append(" ").append(cell.getResult()).append("\n");
+        }
+        if (failedCells.size() > worstCells) {
+            builder.append("+").append(failedCells.size() - worstCells).append(" more cells");
+        }
+        return builder.toString();
+    }
+
+    private static int getWorstCells() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        return jenkins != null
+                ? jenkins.getDescriptorByType(OpsGenieNotifier.DescriptorImpl.class).getMatrixWorstCells()
+                : MatrixAlerts.DEFAULT_WORST_CELLS;
+    }
+}
@@ -0,0 +1,39 @@
+package com.opsgenie.integration.jenkins.matrix;
+
+import com.opsgenie.integration.jenkins.OpsGenieNotifier;
+import hudson.Extension;
+import hudson.matrix.MatrixBuild;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Alerts for a matrix build whose notifier aggregates the cells. A matrix build only runs the
+ * publishers of its cells, never its own, so the notifier is driven from here instead.
+ * <p/>
+ * Only registered when the matrix project plugin is installed.
+ */
+@Extension(optional = true)
+public class MatrixNotifierListener extends RunListener<MatrixBuild> {
+
+    public MatrixNotifierListener() {
+        super(MatrixBuild.class);
+    }
+
+    @Override
+    public void onStarted(MatrixBuild build, TaskListener listener) {
+        OpsGenieNotifier notifier = MatrixAlerts.aggregatingNotifier(build);
+        if (notifier != null) {
+            notifier.sendBuildStart(build, listener);
+        }
+    }
+
+    @Override
+    public void onCompleted(MatrixBuild build, @Nonnull TaskListener listener) {
+        OpsGenieNotifier notifier = MatrixAlerts.aggregatingNotifier(build);
+        if (notifier != null) {
+            notifier.sendAfterBuildData(build, listener);
+        }
+    }
+}
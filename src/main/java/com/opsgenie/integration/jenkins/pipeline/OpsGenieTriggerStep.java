@@ -1,5 +1,7 @@
 package com.opsgenie.integration.jenkins.pipeline;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.opsgenie.integration.jenkins.*;
 import hudson.Extension;
 import hudson.Launcher;
@@ -9,15 +11,27 @@ import hudson.model.TaskListener;
 import jenkins.model.Jenkins;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
-import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
 import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class OpsGenieTriggerStep extends AbstractStepImpl {
+    public static final String STATUS_DELIVERED = "DELIVERED";
+    public static final String STATUS_FAILED = "FAILED";
+    public static final String STATUS_QUEUED = "QUEUED";
+    public static final String STATUS_DROPPED = "DROPPED";
 
     @Nonnull
     private boolean enable;
@@ -28,6 +42,9 @@ public class OpsGenieTriggerStep extends AbstractStepImpl {
     private String teams;
     private String priority;
     private String buildStartPriority;
+    private boolean newFailuresOnly;
+    private boolean transitionsOnly;
+    private boolean wait = true;
 
     public boolean getEnable() {
         return this.enable;
@@ -101,6 +118,37 @@ public class OpsGenieTriggerStep extends AbstractStepImpl {
         this.buildStartPriority = buildStartPriority;
     }
 
+    public boolean getNewFailuresOnly() {
+        return newFailuresOnly;
+    }
+
+    @DataBoundSetter
+    public void setNewFailuresOnly(boolean newFailuresOnly) {
+        this.newFailuresOnly = newFailuresOnly;
+    }
+
+    public boolean getTransitionsOnly() {
+        return transitionsOnly;
+    }
+
+    @DataBoundSetter
+    public void setTransitionsOnly(boolean transitionsOnly) {
+        this.transitionsOnly = transitionsOnly;
+    }
+
+    public boolean getWait() {
+        return wait;
+    }
+
+    /**
+     * When false the step returns as soon as the alert is queued instead of waiting for
+     * OpsGenie to respond.
+     */
+    @DataBoundSetter
+    public void setWait(boolean wait) {
+        this.wait = wait;
+    }
+
     @DataBoundConstructor
     public OpsGenieTriggerStep() {
     }
@@ -124,7 +172,7 @@ public class OpsGenieTriggerStep extends AbstractStepImpl {
         }
     }
 
-    public static class OpsGenieTriggerStepExecution extends AbstractSynchronousNonBlockingStepExecution<String> {
+    public static class OpsGenieTriggerStepExecution extends AbstractStepExecutionImpl {
 
         private static final long serialVersionUID = 1L;
 
@@ -140,8 +188,22 @@ public class OpsGenieTriggerStep extends AbstractStepImpl {
         @StepContextParameter
         private transient Launcher launcher;
 
+        private transient volatile Future<?> delivery;
+
+        /**
+         * Guards the step context, which is completed either by the delivery or by {@link #stop}.
+         * Transient fields are not restored on resume, hence created on first use.
+         */
+        private transient AtomicBoolean completed;
+
+        /**
+         * Hands building the payload and delivering it to the background dispatcher and
+         * completes the step from there. This runs on the thread of the pipeline engine, which is
+         * shared by every pipeline of the controller, so nothing here may block or do more than
+         * set up the delivery.
+         */
         @Override
-        protected String run() throws Exception {
+        public boolean start() throws Exception {
             // default to global config values if not set in step, but allow step to
             // override all global settings
             Jenkins jenkins;
@@ -149,7 +211,8 @@ public class OpsGenieTriggerStep extends AbstractStepImpl {
                 jenkins = Jenkins.getInstance();
             } catch (NullPointerException ne) {
                 listener.error("ERROR?!");
-                return null;
+                getContext().onSuccess(null);
+                return true;
             }
             OpsGenieNotifier.DescriptorImpl ogDesc = jenkins.getDescriptorByType(OpsGenieNotifier.DescriptorImpl.class);
 
@@ -165,7 +228,8 @@ public class OpsGenieTriggerStep extends AbstractStepImpl {
             AlertPriority alertPriority = AlertPriority.fromDisplayName(step.priority);
             AlertPriority notifyBuildStartPriority = AlertPriority.fromDisplayName(step.buildStartPriority);
             AlertProperties alertProperties = new AlertProperties().setTags(tagsGiven).setTeams(teamsGiven)
-                    .setPriority(alertPriority).setBuildStartPriority(notifyBuildStartPriority);
+                    .setPriority(alertPriority).setBuildStartPriority(notifyBuildStartPriority)
+                    .setNewFailuresOnly(step.newFailuresOnly).setTransitionsOnly(step.transitionsOnly);
 
             String apiKeyGiven = Util.fixNull(step.apiKey).isEmpty() ? ogDesc.getApiKey() : step.apiKey;
             String apiUrlGiven = Util.fixNull(step.apiUrl).isEmpty() ? ogDesc.getApiUrl() : step.apiUrl;
@@ -173,11 +237,101 @@ public class OpsGenieTriggerStep extends AbstractStepImpl {
             OpsGenieNotificationRequest request = new OpsGenieNotificationRequest().setAlertProperties(alertProperties)
                     .setBuild(build).setListener(listener).setApiKey(apiKeyGiven).setApiUrl(apiUrlGiven);
 
-            OpsGenieNotificationService ogService = new OpsGenieNotificationService(request);
-            ogService.sendAfterBuildData();
+            // Created here so that the build is marked as alerted before the step returns
+            final OpsGenieNotificationService ogService = new OpsGenieNotificationService(request);
+
+            final boolean wait = step.wait;
+            final long started = System.nanoTime();
+            // Only builds the payload and hands it over, the step is completed by the delivery
+            // itself so that no worker waits for OpsGenie on behalf of the step
+            FutureTask<Void> handOff = new FutureTask<Void>(new Runnable() {
+                @Override
+                public void run() {
+                    final ListenableFuture<Boolean> sent = ogService.sendAfterBuildDataAsync();
+                    delivery = sent;
+                    if (wait) {
+                        sent.addListener(new Runnable() {
+                            @Override
+                            public void run() {
+                                complete(sent, started);
+                            }
+                        }, MoreExecutors.sameThreadExecutor());
+                    }
+                }
+            }, null) {
+                @Override
+                protected void done() {
+                    // Still the current delivery if the hand off was dropped or failed
+                    if (wait && delivery == this) {
+                        complete(this, started);
+                    }
+                }
+            };
+            delivery = handOff;
+            // Never run on this thread, a full queue drops the alert instead
+            boolean queued = OpsGenieDispatcher.get().tryExecute(handOff);
+
+            if (!wait) {
+                // The pipeline carries on while the alert is being delivered
+                if (completed().compareAndSet(false, true)) {
+                    getContext().onSuccess(deliveryResult(queued ? STATUS_QUEUED : STATUS_DROPPED, 0));
+                }
+                return true;
+            }
+            return false;
+        }
 
-            return null;
+        private void complete(Future<?> task, long started) {
+            if (!completed().compareAndSet(false, true)) {
+                // Already completed by stop()
+                return;
+            }
+            long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            try {
+                boolean delivered = Boolean.TRUE.equals(task.get());
+                getContext().onSuccess(deliveryResult(delivered ? STATUS_DELIVERED : STATUS_FAILED, latency));
+            } catch (CancellationException e) {
+                getContext().onSuccess(deliveryResult(STATUS_DROPPED, latency));
+            } catch (InterruptedException e) {
+                getContext().onFailure(e);
+            } catch (ExecutionException e) {
+                getContext().onFailure(e.getCause());
+            }
+        }
+
+        @Override
+        public void stop(@Nonnull Throwable cause) throws Exception {
+            // Claimed before cancelling, so the completion callback of the delivery stays silent
+            boolean claimed = completed().compareAndSet(false, true);
+            Future<?> current = delivery;
+            if (current != null) {
+                current.cancel(true);
+            }
+            if (claimed) {
+                getContext().onFailure(cause);
+            }
         }
 
+        @Override
+        public void onResume() {
+            // A delivery in progress does not survive a restart of the controller
+            if (completed().compareAndSet(false, true)) {
+                getContext().onSuccess(deliveryResult(STATUS_DROPPED, 0));
+            }
+        }
+
+        private synchronized AtomicBoolean completed() {
+            if (completed == null) {
+                completed = new AtomicBoolean();
+            }
+            return completed;
+        }
+
+        private static Map<String, Object> deliveryResult(String status, long latency) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("status", status);
+            result.put("latencyMillis", latency);
+            return result;
+        }
     }
 }
@@ -0,0 +1,69 @@
+package com.opsgenie.integration.jenkins.routing;
+
+import com.opsgenie.integration.jenkins.AlertProperties;
+import com.opsgenie.integration.jenkins.OpsGenieBuildFieldsAction;
+import com.opsgenie.integration.jenkins.OpsGenieNotificationRequest;
+import com.opsgenie.integration.jenkins.OpsGenieNotificationService;
+import com.opsgenie.integration.jenkins.OpsGenieNotifier;
+import com.opsgenie.integration.jenkins.matrix.MatrixAlerts;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import jenkins.model.Jenkins;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Alerts for completed builds of jobs without an OpsGenie notifier or step of their own, as
+ * decided by the routing rules of the global configuration.
+ */
+@Extension
+public class OpsGenieRoutingListener extends RunListener<Run<?, ?>> {
+
+    @Override
+    public void onCompleted(Run<?, ?> build, @Nonnull TaskListener listener) {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return;
+        }
+        OpsGenieNotifier.DescriptorImpl descriptor = jenkins.getDescriptorByType(OpsGenieNotifier.DescriptorImpl.class);
+        RoutingIndex index = descriptor.getRoutingIndex();
+        if (index.isEmpty() || build.getAction(OpsGenieBuildFieldsAction.class) != null) {
+            // No rules, or the build already alerted through a notifier or step of its own
+            return;
+        }
+
+        if (MatrixAlerts.isCell(build) || MatrixAlerts.aggregatingNotifier(build) != null) {
+            // Summarized in the alert of the matrix build, which its notifier sends
+            return;
+        }
+
+        Result result = build.getResult() != null ? build.getResult() : Result.SUCCESS;
+        RoutingRule rule = index.match(build, result);
+        if (rule == null) {
+            return;
+        }
+
+        AlertProperties alertProperties = new AlertProperties()
+                .setTags(Util.fixNull(rule.getTags()).isEmpty() ? descriptor.getTags() : rule.getTags())
+                .setTeams(Util.fixNull(rule.getTeams()).isEmpty() ? descriptor.getTeams() : rule.getTeams())
+                .setPriority(rule.getPriority());
+
+        OpsGenieNotificationRequest request = new OpsGenieNotificationRequest()
+                .setAlertProperties(alertProperties)
+                .setBuild(build)
+                .setListener(listener)
+                .setApiKey(rule.getApiKey() != null ? rule.getApiKey() : descriptor.getApiKey())
+                .setApiUrl(descriptor.getApiUrl());
+
+        OpsGenieNotificationService service = new OpsGenieNotificationService(request);
+        if (descriptor.isAsyncDelivery()) {
+            service.sendAfterBuildDataAsync();
+        } else {
+            service.sendAfterBuildData(descriptor.getDeliveryBudget());
+        }
+    }
+}
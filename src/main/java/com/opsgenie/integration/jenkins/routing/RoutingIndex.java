@@ -0,0 +1,275 @@
+package com.opsgenie.integration.jenkins.routing;
+
+import hudson.model.AbstractBuild;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.Result;
+import hudson.model.Run;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * {@link RoutingRule}s compiled for matching builds in time independent of the number of rules.
+ * <p/>
+ * Rules are stored in a trie on the segments of their path, so a build only looks at the rules
+ * along the full name of its job, which has a handful of segments. Patterns and results are
+ * compiled once, a result check is a bit test.
+ * <p/>
+ * Rules without a path sit at the root and are reached by every build. Those with a job pattern
+ * starting with a literal prefix, such as {@code team-a/.*}, are grouped by that prefix, so a
+ * build only tries the patterns whose prefix its full name starts with. Only rules whose pattern
+ * may match any name are tried for every build.
+ */
+public final class RoutingIndex {
+    public static final RoutingIndex EMPTY = new RoutingIndex();
+
+    private static final Logger logger = LoggerFactory.getLogger(RoutingIndex.class);
+
+    private final TrieNode root = new TrieNode();
+    private int size;
+
+    private RoutingIndex() {
+    }
+
+    /**
+     * Compiles the rules, skipping those with a pattern that is not a valid regular expression.
+     */
+    public static RoutingIndex compile(List<RoutingRule> rules) {
+        if (rules == null || rules.isEmpty()) {
+            return EMPTY;
+        }
+
+        RoutingIndex index = new RoutingIndex();
+        for (int order = 0; order < rules.size(); order++) {
+            RoutingRule rule = rules.get(order);
+            Pattern jobPattern = null;
+            if (rule.getJobPattern() != null) {
+                try {
+                    jobPattern = Pattern.compile(rule.getJobPattern());
+                } catch (PatternSyntaxException e) {
+                    logger.warn("Ignoring OpsGenie routing rule with invalid job pattern " + rule.getJobPattern());
+                    continue;
+                }
+            }
+
+            int resultMask = 0;
+            for (Result result : RoutingRule.parseResults(rule.getResults())) {
+                resultMask |= 1 << result.ordinal;
+            }
+
+            TrieNode node = index.root;
+            for (String segment : segments(rule.getPath())) {
+                TrieNode child = node.children.get(segment);
+                if (child == null) {
+                    child = new TrieNode();
+                    node.children.put(segment, child);
+                }
+                node = child;
+            }
+            // Rules are added in order, so the rules of every node stay sorted by it
+            node.add(new CompiledRule(order, rule, jobPattern, resultMask),
+                    jobPattern != null ? literalPrefix(jobPattern.pattern()) : "");
+            index.size++;
+        }
+        return index;
+    }
+
+    private static List<String> segments(String path) {
+        List<String> segments = new ArrayList<>();
+        if (path == null) {
+            return segments;
+        }
+        for (String segment : path.split("/")) {
+            if (!segment.trim().isEmpty()) {
+                segments.add(segment.trim());
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Returns the characters every name matching the regular expression starts with. Stops at
+     * the first character with a special meaning, so it may be shorter than it could be.
+     */
+    static String literalPrefix(String pattern) {
+        if (pattern.indexOf('|') >= 0) {
+            // An alternation may match names with any prefix
+            return "";
+        }
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' || c == '?' || c == '{') {
+                // The quantified character may be missing
+                prefix.setLength(Math.max(0, prefix.length() - 1));
+                break;
+            }
+            if ("\\[]().+^$".indexOf(c) >= 0) {
+                break;
+            }
+            prefix.append(c);
+        }
+        return prefix.toString();
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the first rule in configuration order matching the build, or {@code null}.
+     */
+    public RoutingRule match(Run<?, ?> build, Result result) {
+        if (isEmpty()) {
+            return null;
+        }
+        return match(build.getParent().getFullName(), result, new BuildLabels(build));
+    }
+
+    /**
+     * Same as {@link #match(Run, Result)} for a build of the job with the given full name that
+     * ran on a node with the given labels.
+     */
+    RoutingRule match(String fullName, Result result, Set<String> labels) {
+        return match(fullName, result, new BuildLabels(labels));
+    }
+
+    private RoutingRule match(String fullName, Result result, BuildLabels labels) {
+        int resultBit = 1 << result.ordinal;
+        CompiledRule best = null;
+
+        TrieNode node = root;
+        int from = 0;
+        while (node != null) {
+            best = firstMatch(node.rules, fullName, resultBit, labels, best);
+            for (int length : node.prefixLengths) {
+                if (length > fullName.length()) {
+                    break;
+                }
+                List<CompiledRule> candidates = node.rulesByPrefix.get(fullName.substring(0, length));
+                if (candidates != null) {
+                    best = firstMatch(candidates, fullName, resultBit, labels, best);
+                }
+            }
+            if (from > fullName.length()) {
+                break;
+            }
+            int slash = fullName.indexOf('/', from);
+            int end = slash < 0 ? fullName.length() : slash;
+            node = node.children.get(fullName.substring(from, end));
+            from = end + 1;
+        }
+        return best != null ? best.rule : null;
+    }
+
+    private static CompiledRule firstMatch(List<CompiledRule> rules, String fullName, int resultBit,
+                                           BuildLabels labels, CompiledRule best) {
+        for (CompiledRule rule : rules) {
+            if (best != null && rule.order >= best.order) {
+                break;
+            }
+            if (rule.matches(fullName, resultBit, labels)) {
+                return rule;
+            }
+        }
+        return best;
+    }
+
+    private static final class TrieNode {
+        private final Map<String, TrieNode> children = new HashMap<>();
+        /**
+         * Rules whose job pattern has no literal prefix, tried for every build reaching the node.
+         */
+        private final List<CompiledRule> rules = new ArrayList<>();
+        private final Map<String, List<CompiledRule>> rulesByPrefix = new HashMap<>();
+        private final SortedSet<Integer> prefixLengths = new TreeSet<>();
+
+        void add(CompiledRule rule, String prefix) {
+            if (prefix.isEmpty()) {
+                rules.add(rule);
+                return;
+            }
+            List<CompiledRule> sharingPrefix = rulesByPrefix.get(prefix);
+            if (sharingPrefix == null) {
+                sharingPrefix = new ArrayList<>();
+                rulesByPrefix.put(prefix, sharingPrefix);
+                prefixLengths.add(prefix.length());
+            }
+            sharingPrefix.add(rule);
+        }
+    }
+
+    private static final class CompiledRule {
+        private final int order;
+        private final RoutingRule rule;
+        private final Pattern jobPattern;
+        private final int resultMask;
+
+        CompiledRule(int order, RoutingRule rule, Pattern jobPattern, int resultMask) {
+            this.order = order;
+            this.rule = rule;
+            this.jobPattern = jobPattern;
+            this.resultMask = resultMask;
+        }
+
+        boolean matches(String fullName, int resultBit, BuildLabels labels) {
+            if (resultMask != 0 && (resultMask & resultBit) == 0) {
+                return false;
+            }
+            if (jobPattern != null && !jobPattern.matcher(fullName).matches()) {
+                return false;
+            }
+            return rule.getLabel() == null || labels.get().contains(rule.getLabel());
+        }
+    }
+
+    /**
+     * Labels of the node the build ran on, only looked up when a rule with a label is reached.
+     */
+    private static final class BuildLabels {
+        private final Run<?, ?> build;
+        private Set<String> labels;
+
+        BuildLabels(Run<?, ?> build) {
+            this.build = build;
+        }
+
+        BuildLabels(Set<String> labels) {
+            this.build = null;
+            this.labels = labels;
+        }
+
+        Set<String> get() {
+            if (labels == null) {
+                labels = Collections.emptySet();
+                // Pipelines may run on any number of nodes, so only freestyle builds have labels
+                if (build instanceof AbstractBuild) {
+                    Node node = ((AbstractBuild<?, ?>) build).getBuiltOn();
+                    if (node != null) {
+                        labels = new HashSet<>();
+                        for (Label label : node.getAssignedLabels()) {
+                            labels.add(label.getName());
+                        }
+                    }
+                }
+            }
+            return labels;
+        }
+    }
+}
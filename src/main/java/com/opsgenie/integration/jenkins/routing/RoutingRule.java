@@ -0,0 +1,165 @@
+package com.opsgenie.integration.jenkins.routing;
+
+import com.opsgenie.integration.jenkins.AlertPriority;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.model.Result;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Decides which OpsGenie teams are alerted, with which tags and priority, when a build of a job
+ * without an OpsGenie notifier or step of its own completes. Rules are defined once in the global
+ * configuration and the first matching rule wins.
+ * <p/>
+ * A rule matches a build if all its conditions that are set hold: the job is the item at the path
+ * or inside it, its full name matches the pattern, its result is one of the results and it was
+ * built on a node with the label.
+ */
+public class RoutingRule extends AbstractDescribableImpl<RoutingRule> {
+    private final String path;
+    private final String jobPattern;
+    private final String results;
+    private final String label;
+    private final String teams;
+    private final String tags;
+    private final AlertPriority priority;
+    private final String apiKey;
+
+    @DataBoundConstructor
+    public RoutingRule(String path,
+                       String jobPattern,
+                       String results,
+                       String label,
+                       String teams,
+                       String tags,
+                       String priority,
+                       String apiKey) {
+        this.path = Util.fixEmptyAndTrim(path);
+        this.jobPattern = Util.fixEmptyAndTrim(jobPattern);
+        this.results = Util.fixEmptyAndTrim(results);
+        this.label = Util.fixEmptyAndTrim(label);
+        this.teams = teams;
+        this.tags = tags;
+        this.priority = AlertPriority.fromDisplayName(priority);
+        this.apiKey = Util.fixEmptyAndTrim(apiKey);
+    }
+
+    /**
+     * Returns the full name of the folder or job the rule is limited to, or {@code null} if it
+     * applies to all jobs.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the regular expression the full name of the job must match, or {@code null}.
+     */
+    public String getJobPattern() {
+        return jobPattern;
+    }
+
+    /**
+     * Returns the comma separated build results the rule applies to, or {@code null} for all.
+     */
+    public String getResults() {
+        return results;
+    }
+
+    /**
+     * Returns the label of the node the build must have run on, or {@code null}.
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    public String getTeams() {
+        return teams;
+    }
+
+    public String getTags() {
+        return tags;
+    }
+
+    public AlertPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Returns the API key to alert with instead of the global one, or {@code null}.
+     */
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    static List<Result> parseResults(String results) {
+        List<Result> parsed = new ArrayList<>();
+        if (results == null) {
+            return parsed;
+        }
+        for (String name : results.split(",")) {
+            name = name.trim().toUpperCase(Locale.ENGLISH);
+            if (name.isEmpty()) {
+                continue;
+            }
+            // Result.fromString falls back to FAILURE for unknown names
+            Result result = Result.fromString(name);
+            if (result.toString().equals(name)) {
+                parsed.add(result);
+            }
+        }
+        return parsed;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<RoutingRule> {
+        @Override
+        public String getDisplayName() {
+            return "OpsGenie Routing Rule";
+        }
+
+        public FormValidation doCheckJobPattern(@QueryParameter String value) {
+            if (Util.fixEmptyAndTrim(value) == null) {
+                return FormValidation.ok();
+            }
+            try {
+                Pattern.compile(value.trim());
+                return FormValidation.ok();
+            } catch (PatternSyntaxException e) {
+                return FormValidation.error("Not a valid regular expression: " + e.getDescription());
+            }
+        }
+
+        public FormValidation doCheckResults(@QueryParameter String value) {
+            if (Util.fixEmptyAndTrim(value) == null) {
+                return FormValidation.ok();
+            }
+            for (String name : value.split(",")) {
+                if (!name.trim().isEmpty() && parseResults(name).isEmpty()) {
+                    return FormValidation.error("Unknown build result " + name.trim()
+                            + ", use SUCCESS, UNSTABLE, FAILURE, NOT_BUILT or ABORTED");
+                }
+            }
+            return FormValidation.ok();
+        }
+
+        public ListBoxModel doFillPriorityItems() {
+            ListBoxModel items = new ListBoxModel();
+            for (AlertPriority priority : AlertPriority.values()) {
+                items.add(priority.getDisplayName(), priority.getValue());
+            }
+            return items;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.opsgenie.integration.jenkins;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.FailureBuilder;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.junit.Assert.assertEquals;
+
+public class AlertTransitionFilterTest {
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private final AlertTransitionFilter filter = AlertTransitionFilter.get();
+
+    @Test
+    public void unchangedResultIsSuppressed() throws Exception {
+        FreeStyleBuild[] builds = failTwice("unchanged");
+        assertEquals(AlertTransitionFilter.Decision.SEND, filter.decide(builds[0], Result.FAILURE, true));
+        assertEquals(AlertTransitionFilter.Decision.SUPPRESS_UNCHANGED,
+                filter.decide(builds[1], Result.FAILURE, true));
+    }
+
+    @Test
+    public void lostAlertDoesNotSuppressTheNextOne() throws Exception {
+        FreeStyleBuild[] builds = failTwice("lost");
+        assertEquals(AlertTransitionFilter.Decision.SEND, filter.decide(builds[0], Result.FAILURE, true));
+        filter.forget(builds[0], Result.FAILURE);
+        assertEquals(AlertTransitionFilter.Decision.SEND, filter.decide(builds[1], Result.FAILURE, true));
+    }
+
+    @Test
+    public void newerResultIsNotForgotten() throws Exception {
+        FreeStyleBuild[] builds = failTwice("newer");
+        filter.decide(builds[0], Result.SUCCESS, true);
+        filter.decide(builds[1], Result.FAILURE, true);
+        // The alert of the earlier build was lost after the later one was decided on
+        filter.forget(builds[0], Result.SUCCESS);
+        assertEquals(AlertTransitionFilter.Decision.SUPPRESS_UNCHANGED,
+                filter.decide(builds[1], Result.FAILURE, true));
+    }
+
+    /**
+     * The filter outlives the Jenkins of each test, hence a job name per test.
+     */
+    private FreeStyleBuild[] failTwice(String job) throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject(job);
+        project.getBuildersList().add(new FailureBuilder());
+        FreeStyleBuild first = j.assertBuildStatus(Result.FAILURE, project.scheduleBuild2(0).get());
+        FreeStyleBuild second = j.assertBuildStatus(Result.FAILURE, project.scheduleBuild2(0).get());
+        return new FreeStyleBuild[] {first, second};
+    }
+}
@@ -0,0 +1,92 @@
+package com.opsgenie.integration.jenkins;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BuildStartDebouncerTest {
+    private final BuildStartDebouncer debouncer = BuildStartDebouncer.get();
+
+    @Before
+    public void setUp() {
+        debouncer.configure(1);
+    }
+
+    @After
+    public void tearDown() {
+        debouncer.configure(BuildStartDebouncer.DEFAULT_GRACE_PERIOD);
+    }
+
+    @Test
+    public void heldAlertIsSentAfterTheGracePeriod() throws Exception {
+        final CountDownLatch sent = new CountDownLatch(1);
+        long start = System.nanoTime();
+        debouncer.hold("job#1", new Runnable() {
+            @Override
+            public void run() {
+                sent.countDown();
+            }
+        });
+
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 900);
+        // Nothing left to cancel for the post build alert
+        assertFalse(debouncer.cancel("job#1"));
+    }
+
+    @Test
+    public void buildEndingWithinTheGracePeriodOnlySendsItsResult() throws Exception {
+        AtomicInteger sent = new AtomicInteger();
+        debouncer.hold("job#2", counting(sent));
+
+        assertTrue(debouncer.cancel("job#2"));
+        awaitGracePeriod();
+        assertEquals(0, sent.get());
+    }
+
+    @Test
+    public void heldAlertIsReplacedUnderTheSameKey() throws Exception {
+        AtomicInteger first = new AtomicInteger();
+        AtomicInteger second = new AtomicInteger();
+        debouncer.hold("job#3", counting(first));
+        debouncer.hold("job#3", counting(second));
+
+        awaitGracePeriod();
+        assertEquals(0, first.get());
+        assertEquals(1, second.get());
+    }
+
+    @Test
+    public void cancellingOneBuildKeepsTheOthersHeld() throws Exception {
+        AtomicInteger cancelled = new AtomicInteger();
+        AtomicInteger kept = new AtomicInteger();
+        debouncer.hold("job#4", counting(cancelled));
+        debouncer.hold("job#5", counting(kept));
+
+        assertTrue(debouncer.cancel("job#4"));
+        awaitGracePeriod();
+        assertEquals(0, cancelled.get());
+        assertEquals(1, kept.get());
+    }
+
+    private static Runnable counting(final AtomicInteger sent) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                sent.incrementAndGet();
+            }
+        };
+    }
+
+    private static void awaitGracePeriod() throws InterruptedException {
+        Thread.sleep(1500);
+    }
+}
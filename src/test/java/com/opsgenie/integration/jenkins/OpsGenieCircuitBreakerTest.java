@@ -0,0 +1,126 @@
+package com.opsgenie.integration.jenkins;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OpsGenieCircuitBreakerTest {
+    private static final String ENDPOINT = "https://api.opsgenie.com";
+
+    @After
+    public void tearDown() {
+        OpsGenieCircuitBreaker.configure(false, OpsGenieCircuitBreaker.DEFAULT_FAILURE_THRESHOLD,
+                OpsGenieCircuitBreaker.DEFAULT_MINIMUM_REQUESTS, OpsGenieCircuitBreaker.DEFAULT_WINDOW,
+                OpsGenieCircuitBreaker.DEFAULT_OPEN_DURATION);
+    }
+
+    @Test
+    public void disabledBreakerIsNotCreated() {
+        OpsGenieCircuitBreaker.configure(false, 50, 4, 60, 30);
+        assertNull(OpsGenieCircuitBreaker.forEndpoint(ENDPOINT));
+    }
+
+    @Test
+    public void staysClosedBelowTheMinimumRequests() {
+        OpsGenieCircuitBreaker breaker = configure(30);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.recordFailure();
+        }
+        assertEquals(OpsGenieCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void opensOnceTheFailureThresholdIsReached() {
+        OpsGenieCircuitBreaker breaker = configure(30);
+        breaker.recordSuccess();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        assertEquals(OpsGenieCircuitBreaker.State.CLOSED, breaker.getState());
+
+        // Two of four requests failed
+        breaker.recordFailure();
+        assertEquals(OpsGenieCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void successfulProbeClosesTheBreaker() {
+        OpsGenieCircuitBreaker breaker = trip(configure(0));
+
+        assertTrue(breaker.allowRequest());
+        assertEquals(OpsGenieCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        // A single probe at a time
+        assertFalse(breaker.allowRequest());
+
+        breaker.recordSuccess();
+        assertEquals(OpsGenieCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        // The failures before opening are forgotten
+        breaker.recordFailure();
+        assertEquals(OpsGenieCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void failedProbeOpensTheBreakerAgain() {
+        OpsGenieCircuitBreaker breaker = trip(configure(1));
+        assertFalse(breaker.allowRequest());
+
+        awaitOpenDuration();
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure();
+        assertEquals(OpsGenieCircuitBreaker.State.OPEN, breaker.getState());
+        // Waits for the full open duration again
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void ignoredProbeLetsTheNextRequestProbe() {
+        OpsGenieCircuitBreaker breaker = trip(configure(1));
+
+        awaitOpenDuration();
+        assertTrue(breaker.allowRequest());
+        assertEquals(OpsGenieCircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        breaker.recordIgnored();
+        assertEquals(OpsGenieCircuitBreaker.State.OPEN, breaker.getState());
+        // No second wait for the open duration
+        assertTrue(breaker.allowRequest());
+        assertEquals(OpsGenieCircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    public void ignoredOutcomesDoNotCountWhileClosed() {
+        OpsGenieCircuitBreaker breaker = configure(30);
+        breaker.recordIgnored();
+        assertEquals(OpsGenieCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    /**
+     * Opens after half of at least four requests failed.
+     */
+    private static OpsGenieCircuitBreaker configure(int openSeconds) {
+        OpsGenieCircuitBreaker.configure(true, 50, 4, 60, openSeconds);
+        return OpsGenieCircuitBreaker.forEndpoint(ENDPOINT);
+    }
+
+    private static OpsGenieCircuitBreaker trip(OpsGenieCircuitBreaker breaker) {
+        for (int i = 0; i < 4; i++) {
+            breaker.recordFailure();
+        }
+        assertEquals(OpsGenieCircuitBreaker.State.OPEN, breaker.getState());
+        return breaker;
+    }
+
+    private static void awaitOpenDuration() {
+        try {
+            Thread.sleep(1100);
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.opsgenie.integration.jenkins;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OpsGenieDispatcherTest {
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        OpsGenieDispatcher.configure(OpsGenieDispatcher.DEFAULT_WORKERS, OpsGenieDispatcher.DEFAULT_QUEUE_CAPACITY,
+                OpsGenieDispatcher.RejectionPolicy.CALLER_RUNS);
+    }
+
+    @Test
+    public void callerRunsDeliversOnTheCallingThread() throws Exception {
+        OpsGenieDispatcher dispatcher = saturated(OpsGenieDispatcher.RejectionPolicy.CALLER_RUNS);
+
+        final AtomicReference<Thread> ranOn = new AtomicReference<>();
+        dispatcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                ranOn.set(Thread.currentThread());
+            }
+        });
+        assertSame(Thread.currentThread(), ranOn.get());
+    }
+
+    @Test
+    public void tryExecuteNeverRunsOnTheCallingThread() throws Exception {
+        OpsGenieDispatcher dispatcher = saturated(OpsGenieDispatcher.RejectionPolicy.CALLER_RUNS);
+
+        final AtomicReference<Thread> ranOn = new AtomicReference<>();
+        FutureTask<Void> delivery = new FutureTask<>(new Runnable() {
+            @Override
+            public void run() {
+                ranOn.set(Thread.currentThread());
+            }
+        }, null);
+        assertFalse(dispatcher.tryExecute(delivery));
+        assertTrue(delivery.isCancelled());
+        assertNull(ranOn.get());
+
+        // Only the handed over task fails fast, later callers still deliver themselves
+        FutureTask<Void> next = new FutureTask<>(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, null);
+        dispatcher.execute(next);
+        assertTrue(next.isDone());
+        assertFalse(next.isCancelled());
+    }
+
+    @Test
+    public void discardCancelsTheNewAlert() throws Exception {
+        OpsGenieDispatcher dispatcher = saturated(OpsGenieDispatcher.RejectionPolicy.DISCARD);
+
+        FutureTask<Void> dropped = blocking();
+        dispatcher.execute(dropped);
+        assertTrue(dropped.isCancelled());
+        assertFalse(dispatcher.tryExecute(blocking()));
+    }
+
+    @Test
+    public void discardOldestCancelsTheQueuedAlert() throws Exception {
+        OpsGenieDispatcher.configure(1, 1, OpsGenieDispatcher.RejectionPolicy.DISCARD_OLDEST);
+        OpsGenieDispatcher dispatcher = OpsGenieDispatcher.get();
+        dispatcher.execute(blocking());
+        FutureTask<Void> oldest = blocking();
+        dispatcher.execute(oldest);
+        awaitQueueDepth(dispatcher, 1);
+
+        FutureTask<Void> newest = blocking();
+        assertTrue(dispatcher.tryExecute(newest));
+        assertTrue(oldest.isCancelled());
+        assertFalse(newest.isCancelled());
+
+        release.countDown();
+        newest.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void callbacksRunWhileTheDeliveryQueueIsFull() throws Exception {
+        OpsGenieDispatcher.configure(1, 1, OpsGenieDispatcher.RejectionPolicy.DISCARD_OLDEST);
+        OpsGenieDispatcher dispatcher = OpsGenieDispatcher.get();
+        dispatcher.execute(blocking());
+        dispatcher.execute(blocking());
+
+        final CountDownLatch called = new CountDownLatch(1);
+        OpsGenieDispatcher.callbacks().execute(new Runnable() {
+            @Override
+            public void run() {
+                called.countDown();
+            }
+        });
+        // Evicts whatever is queued, which must not be the callback
+        dispatcher.execute(blocking());
+
+        assertTrue(called.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Returns a dispatcher with its only worker busy and its queue full.
+     */
+    private OpsGenieDispatcher saturated(OpsGenieDispatcher.RejectionPolicy policy) throws InterruptedException {
+        OpsGenieDispatcher.configure(1, 1, policy);
+        OpsGenieDispatcher dispatcher = OpsGenieDispatcher.get();
+        dispatcher.execute(blocking());
+        dispatcher.execute(blocking());
+        awaitQueueDepth(dispatcher, 1);
+        return dispatcher;
+    }
+
+    private static void awaitQueueDepth(OpsGenieDispatcher dispatcher, int depth) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dispatcher.getQueueDepth() != depth || dispatcher.getActiveWorkers() != 1) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Expected " + depth + " queued alerts but were " + dispatcher.getQueueDepth());
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Occupies a worker or a queue slot until the test ends.
+     */
+    private FutureTask<Void> blocking() {
+        return new FutureTask<>(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, null);
+    }
+}
@@ -0,0 +1,76 @@
+package com.opsgenie.integration.jenkins;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class OpsGenieEndpointsTest {
+    private static final String US = "https://api.opsgenie.com";
+    private static final String EU = "https://api.eu.opsgenie.com";
+
+    private final long now = System.currentTimeMillis();
+
+    @Before
+    public void setUp() {
+        OpsGenieEndpoints.configure(US, EU);
+    }
+
+    @After
+    public void tearDown() {
+        OpsGenieEndpoints.configure(US, null);
+    }
+
+    @Test
+    public void otherApiUrlsAreOnlySentToThemselves() {
+        assertEquals(Collections.singletonList("https://opsgenie.example.com"),
+                OpsGenieEndpoints.order("https://opsgenie.example.com", now));
+    }
+
+    @Test
+    public void configuredOrderHoldsWithoutRequests() {
+        assertEquals(Arrays.asList(US, EU), OpsGenieEndpoints.order(US, now));
+        // As given, not as configured
+        assertEquals(Arrays.asList(US + "/", EU), OpsGenieEndpoints.order(US + "/", now));
+    }
+
+    @Test
+    public void laterEndpointTakesOverOnlyBeyondThePreferenceMargin() {
+        record(US, false, 100);
+        record(EU, false, 100 - OpsGenieEndpoints.PREFERENCE_MARGIN + 10);
+        assertEquals(Arrays.asList(US, EU), OpsGenieEndpoints.order(US, now));
+
+        OpsGenieEndpoints.configure(US, EU);
+        record(US, false, 100);
+        record(EU, false, 100 - OpsGenieEndpoints.PREFERENCE_MARGIN - 10);
+        assertEquals(Arrays.asList(EU, US), OpsGenieEndpoints.order(US, now));
+    }
+
+    @Test
+    public void failingEndpointFallsBehind() {
+        record(US, false, 100);
+        record(EU, false, 100);
+        record(US, true, 100);
+        assertEquals(Arrays.asList(EU, US), OpsGenieEndpoints.order(US, now));
+    }
+
+    @Test
+    public void failuresFadeOut() {
+        record(US, true, 100);
+        record(EU, false, 300);
+        assertEquals(Arrays.asList(EU, US), OpsGenieEndpoints.order(US, now));
+
+        // Five recovery periods later the failure is all but forgotten
+        long later = now + 5 * OpsGenieEndpoints.RECOVERY_MILLIS;
+        assertEquals(Arrays.asList(US, EU), OpsGenieEndpoints.order(US, later));
+    }
+
+    private void record(String apiUrl, boolean failed, long latencyMillis) {
+        OpsGenieEndpoints.record(apiUrl, failed, TimeUnit.MILLISECONDS.toNanos(latencyMillis), now);
+    }
+}
@@ -0,0 +1,81 @@
+package com.opsgenie.integration.jenkins;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.File;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+
+public class OpsGenieOutboxTest {
+    private static final String API_URL = "https://api.opsgenie.com";
+    private static final String API_KEY = "outbox-test-api-key";
+
+    // The API key is encrypted with the confidential store of Jenkins
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void settledSegmentsAreDeletedWithoutBacklog() throws Exception {
+        File directory = folder.newFolder();
+        OpsGenieOutbox outbox = new OpsGenieOutbox(directory);
+
+        // Each payload takes more than half a segment, so every alert starts a new one
+        byte[] payload = new byte[OpsGenieOutbox.SEGMENT_SIZE / 2 + 1];
+        for (int i = 0; i < 3; i++) {
+            outbox.settle(outbox.append(API_URL, API_KEY, payload));
+        }
+        assertEquals(0, outbox.getPendingCount());
+        assertEquals(3, outbox.getSegmentCount());
+
+        outbox.compact();
+        assertEquals(1, outbox.getSegmentCount());
+        assertEquals(1, directory.list().length);
+    }
+
+    @Test
+    public void pendingAlertsSurviveCompaction() throws Exception {
+        File directory = folder.newFolder();
+        OpsGenieOutbox outbox = new OpsGenieOutbox(directory);
+
+        byte[] payload = new byte[OpsGenieOutbox.SEGMENT_SIZE / 2 + 1];
+        outbox.release(outbox.append(API_URL, API_KEY, payload));
+        outbox.settle(outbox.append(API_URL, API_KEY, payload));
+        outbox.compact();
+        outbox.force();
+
+        assertEquals(1, outbox.getPendingCount());
+        assertEquals(1, new OpsGenieOutbox(directory).getPendingCount());
+    }
+
+    @Test
+    public void apiKeyIsNotJournaledInPlainText() throws Exception {
+        File directory = folder.newFolder();
+        OpsGenieOutbox outbox = new OpsGenieOutbox(directory);
+        outbox.release(outbox.append(API_URL, API_KEY, "{}".getBytes(Charset.forName("UTF-8"))));
+        outbox.force();
+
+        for (File segment : directory.listFiles()) {
+            String data = new String(FileUtils.readFileToByteArray(segment), Charset.forName("ISO-8859-1"));
+            assertFalse(data.contains(API_KEY));
+        }
+    }
+
+    @Test
+    public void sealedApiKeysAreReadBack() {
+        String sealed = OpsGenieOutbox.sealApiKey(API_KEY);
+        assertNotEquals(API_KEY, sealed);
+        assertEquals(API_KEY, OpsGenieOutbox.unsealApiKey(sealed));
+        // Journaled by earlier versions
+        assertEquals(API_KEY, OpsGenieOutbox.unsealApiKey(API_KEY));
+    }
+}
@@ -0,0 +1,141 @@
+package com.opsgenie.integration.jenkins;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OpsGenieRateLimiterTest {
+    private static final String API_KEY = "rate-limiter-test";
+
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        OpsGenieRateLimiter.maxWaiters = OpsGenieRateLimiter.MAX_WAITERS;
+        OpsGenieRateLimiter.configure(false, OpsGenieRateLimiter.DEFAULT_REQUESTS_PER_MINUTE,
+                OpsGenieRateLimiter.DEFAULT_BURST, OpsGenieRateLimiter.DEFAULT_MAX_WAIT,
+                OpsGenieRateLimiter.DEFAULT_SHED_PRIORITY);
+        threads.shutdownNow();
+    }
+
+    @Test
+    public void higherPriorityOvertakesQueuedAlerts() throws Exception {
+        // One token per second
+        OpsGenieRateLimiter.configure(true, 60, 1, 30, AlertPriority.P5);
+        OpsGenieRateLimiter limiter = OpsGenieRateLimiter.forApiKey(API_KEY);
+        assertTrue(limiter.tryAcquire());
+
+        List<AlertPriority> order = Collections.synchronizedList(new ArrayList<AlertPriority>());
+        Future<Boolean> moderate = acquireInBackground(limiter, AlertPriority.P3, 10000, order);
+        awaitQueueLength(limiter, 1);
+        Future<Boolean> critical = acquireInBackground(limiter, AlertPriority.P1, 10000, order);
+        awaitQueueLength(limiter, 2);
+
+        assertTrue(critical.get(5, TimeUnit.SECONDS));
+        assertTrue(moderate.get(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(AlertPriority.P1, AlertPriority.P3), order);
+    }
+
+    @Test
+    public void shedPriorityIsRefusedWithoutWaiting() throws Exception {
+        OpsGenieRateLimiter.configure(true, 60, 1, 30, AlertPriority.P4);
+        OpsGenieRateLimiter limiter = OpsGenieRateLimiter.forApiKey(API_KEY);
+        assertTrue(limiter.tryAcquire());
+
+        long start = System.nanoTime();
+        assertFalse(limiter.acquire(AlertPriority.P4, 5000));
+        assertFalse(limiter.acquire(AlertPriority.P5, 5000));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+        assertEquals(0, limiter.getQueueLength());
+    }
+
+    @Test
+    public void fullQueueEvictsOnlyLowerPriorities() throws Exception {
+        // Practically no refill during the test
+        OpsGenieRateLimiter.configure(true, 1, 1, 30, AlertPriority.P5);
+        OpsGenieRateLimiter.maxWaiters = 1;
+        OpsGenieRateLimiter limiter = OpsGenieRateLimiter.forApiKey(API_KEY);
+        assertTrue(limiter.tryAcquire());
+
+        Future<Boolean> low = acquireInBackground(limiter, AlertPriority.P4, 10000, null);
+        awaitQueueLength(limiter, 1);
+        Future<Boolean> critical = acquireInBackground(limiter, AlertPriority.P1, 10000, null);
+
+        // The P4 alert makes room for the P1 alert
+        assertFalse(low.get(5, TimeUnit.SECONDS));
+        awaitQueueLength(limiter, 1);
+        assertFalse(critical.isDone());
+
+        // A P2 alert can not evict the queued P1 alert and is refused right away
+        long start = System.nanoTime();
+        assertFalse(limiter.acquire(AlertPriority.P2, 5000));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+    }
+
+    @Test
+    public void rateLimitedResponsePausesTheBucket() throws Exception {
+        OpsGenieRateLimiter.configure(true, 6000, 5, 30, AlertPriority.P5);
+        OpsGenieRateLimiter limiter = OpsGenieRateLimiter.forApiKey(API_KEY);
+
+        long start = System.nanoTime();
+        limiter.onRateLimited(500);
+        assertFalse(limiter.tryAcquire());
+        assertTrue(limiter.acquire(AlertPriority.P1, 5000));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 450);
+    }
+
+    @Test
+    public void reconfiguringMovesWaitersToTheNewLimiter() throws Exception {
+        OpsGenieRateLimiter.configure(true, 1, 1, 30, AlertPriority.P5);
+        OpsGenieRateLimiter retired = OpsGenieRateLimiter.forApiKey(API_KEY);
+        assertTrue(retired.tryAcquire());
+
+        Future<Boolean> waiting = acquireInBackground(retired, AlertPriority.P1, 10000, null);
+        awaitQueueLength(retired, 1);
+
+        OpsGenieRateLimiter.configure(true, 1, 1, 30, AlertPriority.P5);
+        assertTrue(waiting.get(5, TimeUnit.SECONDS));
+
+        // The waiter took the only token of the new bucket, the retired one hands out no more
+        OpsGenieRateLimiter current = OpsGenieRateLimiter.forApiKey(API_KEY);
+        assertFalse(current.tryAcquire());
+        assertFalse(retired.tryAcquire());
+    }
+
+    private Future<Boolean> acquireInBackground(final OpsGenieRateLimiter limiter, final AlertPriority priority,
+                                                final long budgetMillis, final List<AlertPriority> order) {
+        return threads.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                boolean acquired = limiter.acquire(priority, budgetMillis);
+                if (acquired && order != null) {
+                    order.add(priority);
+                }
+                return acquired;
+            }
+        });
+    }
+
+    private static void awaitQueueLength(OpsGenieRateLimiter limiter, int length) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (limiter.getQueueLength() != length) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Expected " + length + " waiters but were " + limiter.getQueueLength());
+            }
+            Thread.sleep(10);
+        }
+    }
+}
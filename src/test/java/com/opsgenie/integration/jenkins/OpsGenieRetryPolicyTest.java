@@ -0,0 +1,77 @@
+package com.opsgenie.integration.jenkins;
+
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.junit.Test;
+
+import javax.net.ssl.SSLHandshakeException;
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OpsGenieRetryPolicyTest {
+    private final OpsGenieRetryPolicy policy = new OpsGenieRetryPolicy(5, 500, 4000, 30000);
+
+    @Test
+    public void delaysGrowExponentiallyWithJitterInTheUpperHalf() {
+        for (int i = 0; i < 1000; i++) {
+            assertBetween(250, 500, policy.nextDelay(1, 0, 30000));
+            assertBetween(500, 1000, policy.nextDelay(2, 0, 30000));
+            assertBetween(1000, 2000, policy.nextDelay(3, 0, 30000));
+            // Capped at the maximum delay
+            assertBetween(2000, 4000, policy.nextDelay(4, 0, 30000));
+        }
+    }
+
+    @Test
+    public void largeAttemptCountsDoNotOverflow() {
+        OpsGenieRetryPolicy patient = new OpsGenieRetryPolicy(Integer.MAX_VALUE, 500, 4000, 30000);
+        assertBetween(2000, 4000, patient.nextDelay(64, 0, 30000));
+        assertBetween(2000, 4000, patient.nextDelay(Integer.MAX_VALUE - 1, 0, 30000));
+    }
+
+    @Test
+    public void retryAfterIsHonored() {
+        assertEquals(7000, policy.nextDelay(1, 7000, 30000));
+    }
+
+    @Test
+    public void noRetryAfterTheLastAttemptOrBeyondTheBudget() {
+        assertEquals(-1, policy.nextDelay(5, 0, 30000));
+        assertEquals(-1, policy.nextDelay(1, 0, 200));
+        assertEquals(-1, policy.nextDelay(1, 7000, 5000));
+        assertEquals(-1, OpsGenieRetryPolicy.NONE.nextDelay(1, 0, 30000));
+    }
+
+    @Test
+    public void onlyTransientStatusesAreRetried() {
+        assertTrue(OpsGenieRetryPolicy.isRetryable(408));
+        assertTrue(OpsGenieRetryPolicy.isRetryable(429));
+        assertTrue(OpsGenieRetryPolicy.isRetryable(500));
+        assertTrue(OpsGenieRetryPolicy.isRetryable(503));
+        assertFalse(OpsGenieRetryPolicy.isRetryable(400));
+        assertFalse(OpsGenieRetryPolicy.isRetryable(401));
+        assertFalse(OpsGenieRetryPolicy.isRetryable(403));
+        assertFalse(OpsGenieRetryPolicy.isRetryable(422));
+    }
+
+    @Test
+    public void onlyConnectionProblemsAreRetried() {
+        assertTrue(OpsGenieRetryPolicy.isRetryable(new ConnectTimeoutException()));
+        assertTrue(OpsGenieRetryPolicy.isRetryable(new SocketTimeoutException()));
+        assertTrue(OpsGenieRetryPolicy.isRetryable(new SocketException("Connection reset")));
+        assertTrue(OpsGenieRetryPolicy.isRetryable(new NoHttpResponseException("api.opsgenie.com failed to respond")));
+        assertTrue(OpsGenieRetryPolicy.isRetryable(new UnknownHostException("api.opsgenie.com")));
+        assertFalse(OpsGenieRetryPolicy.isRetryable(new SSLHandshakeException("handshake failed")));
+        assertFalse(OpsGenieRetryPolicy.isRetryable(new IOException("stream closed")));
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        assertTrue(actual + " not in [" + min + ", " + max + "]", actual >= min && actual <= max);
+    }
+}
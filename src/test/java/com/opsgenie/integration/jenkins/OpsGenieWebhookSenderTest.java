@@ -0,0 +1,197 @@
+package com.opsgenie.integration.jenkins;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OpsGenieWebhookSenderTest {
+    private static final String API_KEY = "webhook-sender-test";
+    private static final byte[] PAYLOAD = "{}".getBytes(Charset.forName("UTF-8"));
+    private static final byte[] SUCCESS = "{\"result\":\"success\"}".getBytes(Charset.forName("UTF-8"));
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private final PrintStream console = new PrintStream(new NullOutputStream());
+    private final List<HttpServer> servers = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (HttpServer server : servers) {
+            server.stop(0);
+        }
+        OpsGenieEndpoints.configure("https://api.opsgenie.com", null);
+        OpsGenieHttpClient.configure(OpsGenieHttpClient.DEFAULT_MAX_CONNECTIONS,
+                OpsGenieHttpClient.DEFAULT_MAX_CONNECTIONS_PER_ROUTE, OpsGenieHttpClient.DEFAULT_CONNECT_TIMEOUT,
+                OpsGenieHttpClient.DEFAULT_SOCKET_TIMEOUT, OpsGenieHttpClient.DEFAULT_CONNECTION_REQUEST_TIMEOUT,
+                OpsGenieHttpClient.DEFAULT_IDLE_CONNECTION_TIMEOUT);
+        OpsGenieAsyncHttpClient.shutdown();
+        OpsGenieRateLimiter.configure(false, OpsGenieRateLimiter.DEFAULT_REQUESTS_PER_MINUTE,
+                OpsGenieRateLimiter.DEFAULT_BURST, OpsGenieRateLimiter.DEFAULT_MAX_WAIT,
+                OpsGenieRateLimiter.DEFAULT_SHED_PRIORITY);
+        OpsGenieCircuitBreaker.configure(false, OpsGenieCircuitBreaker.DEFAULT_FAILURE_THRESHOLD,
+                OpsGenieCircuitBreaker.DEFAULT_MINIMUM_REQUESTS, OpsGenieCircuitBreaker.DEFAULT_WINDOW,
+                OpsGenieCircuitBreaker.DEFAULT_OPEN_DURATION);
+    }
+
+    @Test
+    public void throttledAttemptDoesNotTakeTheProbe() {
+        String apiUrl = "http://127.0.0.1:1";
+        OpsGenieCircuitBreaker breaker = trippedBreaker(apiUrl);
+        exhaustRateLimit();
+
+        OpsGenieWebhookSender sender = new OpsGenieWebhookSender(apiUrl, API_KEY, AlertPriority.P5, console);
+        assertEquals(OpsGenieWebhookSender.Outcome.FAILED, sender.send(PAYLOAD, OpsGenieRetryPolicy.NONE));
+
+        assertEquals(OpsGenieCircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void throttledAsyncAttemptDoesNotTakeTheProbe() throws Exception {
+        OpsGenieAsyncHttpClient.configure(true, 1, 10, 10, 1000, 1000, 1000);
+        String apiUrl = "http://127.0.0.1:1";
+        OpsGenieCircuitBreaker breaker = trippedBreaker(apiUrl);
+        exhaustRateLimit();
+
+        OpsGenieWebhookSender sender = new OpsGenieWebhookSender(apiUrl, API_KEY, AlertPriority.P5, console);
+        assertEquals(OpsGenieWebhookSender.Outcome.FAILED,
+                sender.sendAsync(PAYLOAD, OpsGenieRetryPolicy.NONE).get(5, TimeUnit.SECONDS));
+
+        assertEquals(OpsGenieCircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void failsOverToTheNextEndpointOnServerErrors() throws IOException {
+        AtomicInteger primaryRequests = new AtomicInteger();
+        AtomicInteger secondaryRequests = new AtomicInteger();
+        String primary = startOpsGenie(503, 0, primaryRequests);
+        String secondary = startOpsGenie(200, 0, secondaryRequests);
+        OpsGenieEndpoints.configure(primary, secondary);
+
+        OpsGenieWebhookSender sender = new OpsGenieWebhookSender(primary, API_KEY, console);
+        assertEquals(OpsGenieWebhookSender.Outcome.DELIVERED, sender.send(PAYLOAD, OpsGenieRetryPolicy.NONE));
+        assertEquals(1, primaryRequests.get());
+        assertEquals(1, secondaryRequests.get());
+
+        // The failure moved the secondary endpoint to the front
+        assertEquals(secondary, OpsGenieEndpoints.order(primary).get(0));
+    }
+
+    @Test
+    public void failsOverToTheNextEndpointOnTimeouts() throws IOException {
+        OpsGenieHttpClient.configure(OpsGenieHttpClient.DEFAULT_MAX_CONNECTIONS,
+                OpsGenieHttpClient.DEFAULT_MAX_CONNECTIONS_PER_ROUTE, OpsGenieHttpClient.DEFAULT_CONNECT_TIMEOUT,
+                500, OpsGenieHttpClient.DEFAULT_CONNECTION_REQUEST_TIMEOUT,
+                OpsGenieHttpClient.DEFAULT_IDLE_CONNECTION_TIMEOUT);
+        AtomicInteger secondaryRequests = new AtomicInteger();
+        String primary = startOpsGenie(200, 2000, new AtomicInteger());
+        String secondary = startOpsGenie(200, 0, secondaryRequests);
+        OpsGenieEndpoints.configure(primary, secondary);
+
+        OpsGenieWebhookSender sender = new OpsGenieWebhookSender(primary, API_KEY, console);
+        assertEquals(OpsGenieWebhookSender.Outcome.DELIVERED, sender.send(PAYLOAD, OpsGenieRetryPolicy.NONE));
+        assertEquals(1, secondaryRequests.get());
+    }
+
+    @Test
+    public void asyncDeliveryFailsOverToTheNextEndpoint() throws Exception {
+        OpsGenieAsyncHttpClient.configure(true, 1, 10, 10, 1000, 1000, 1000);
+        AtomicInteger secondaryRequests = new AtomicInteger();
+        String primary = startOpsGenie(500, 0, new AtomicInteger());
+        String secondary = startOpsGenie(200, 0, secondaryRequests);
+        OpsGenieEndpoints.configure(primary, secondary);
+
+        OpsGenieWebhookSender sender = new OpsGenieWebhookSender(primary, API_KEY, console);
+        assertEquals(OpsGenieWebhookSender.Outcome.DELIVERED,
+                sender.sendAsync(PAYLOAD, OpsGenieRetryPolicy.NONE).get(5, TimeUnit.SECONDS));
+        assertEquals(1, secondaryRequests.get());
+    }
+
+    @Test
+    public void doesNotFailOverWhenTheAlertIsRefused() throws IOException {
+        AtomicInteger secondaryRequests = new AtomicInteger();
+        String primary = startOpsGenie(422, 0, new AtomicInteger());
+        String secondary = startOpsGenie(200, 0, secondaryRequests);
+        OpsGenieEndpoints.configure(primary, secondary);
+
+        OpsGenieWebhookSender sender = new OpsGenieWebhookSender(primary, API_KEY, console);
+        assertEquals(OpsGenieWebhookSender.Outcome.REJECTED, sender.send(PAYLOAD, OpsGenieRetryPolicy.NONE));
+        assertEquals(0, secondaryRequests.get());
+    }
+
+    /**
+     * Starts a local OpsGenie answering every alert with the given status after the given delay.
+     * Returns its API URL.
+     */
+    private String startOpsGenie(final int status, final long delayMillis, final AtomicInteger requests)
+            throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    IOUtils.toByteArray(exchange.getRequestBody());
+                    requests.incrementAndGet();
+                    if (delayMillis > 0) {
+                        Thread.sleep(delayMillis);
+                    }
+                    exchange.getResponseHeaders().set("Content-Type", "application/json");
+                    exchange.sendResponseHeaders(status, SUCCESS.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(SUCCESS);
+                    out.close();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+        servers.add(server);
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the breaker of the endpoint, open but ready to let the next request probe.
+     */
+    private static OpsGenieCircuitBreaker trippedBreaker(String apiUrl) {
+        OpsGenieCircuitBreaker.configure(true, 50, 4, 60, 0);
+        OpsGenieCircuitBreaker breaker = OpsGenieCircuitBreaker.forEndpoint(apiUrl);
+        for (int i = 0; i < 4; i++) {
+            breaker.recordFailure();
+        }
+        assertEquals(OpsGenieCircuitBreaker.State.OPEN, breaker.getState());
+        return breaker;
+    }
+
+    /**
+     * Takes the only permit of the API key, further P5 alerts are refused without waiting.
+     */
+    private static void exhaustRateLimit() {
+        OpsGenieRateLimiter.configure(true, 1, 1, 30, AlertPriority.P5);
+        assertTrue(OpsGenieRateLimiter.forApiKey(API_KEY).tryAcquire());
+    }
+}
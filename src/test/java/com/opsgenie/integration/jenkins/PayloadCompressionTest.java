@@ -0,0 +1,114 @@
+package com.opsgenie.integration.jenkins;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PayloadCompressionTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] SUCCESS = "{\"result\":\"success\"}".getBytes(UTF_8);
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private final PrintStream console = new PrintStream(new NullOutputStream());
+    private HttpServer opsGenie;
+    private volatile byte[] receivedBody;
+    private volatile String receivedEncoding;
+
+    @Before
+    public void startOpsGenie() throws IOException {
+        opsGenie = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        opsGenie.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    receivedEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+                    receivedBody = IOUtils.toByteArray(exchange.getRequestBody());
+                    exchange.getResponseHeaders().set("Content-Type", "application/json");
+                    exchange.sendResponseHeaders(200, SUCCESS.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(SUCCESS);
+                    out.close();
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        opsGenie.start();
+    }
+
+    @After
+    public void stopOpsGenie() {
+        opsGenie.stop(0);
+        PayloadCompression.configure(false, PayloadCompression.DEFAULT_THRESHOLD);
+    }
+
+    @Test
+    public void largePayloadIsSentGzipped() throws IOException {
+        PayloadCompression.configure(true, 1024);
+        byte[] payload = payloadOf(4096);
+
+        assertEquals(OpsGenieWebhookSender.Outcome.DELIVERED, send(payload));
+        assertEquals("gzip", receivedEncoding);
+        assertTrue(receivedBody.length < payload.length);
+        assertArrayEquals(payload, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(receivedBody))));
+    }
+
+    @Test
+    public void payloadBelowTheThresholdIsSentAsIs() {
+        PayloadCompression.configure(true, 1024);
+        byte[] payload = payloadOf(512);
+
+        assertEquals(OpsGenieWebhookSender.Outcome.DELIVERED, send(payload));
+        assertNull(receivedEncoding);
+        assertArrayEquals(payload, receivedBody);
+    }
+
+    @Test
+    public void disabledCompressionSendsLargePayloadsAsIs() {
+        PayloadCompression.configure(false, 1024);
+        byte[] payload = payloadOf(4096);
+
+        assertEquals(OpsGenieWebhookSender.Outcome.DELIVERED, send(payload));
+        assertNull(receivedEncoding);
+        assertArrayEquals(payload, receivedBody);
+    }
+
+    private OpsGenieWebhookSender.Outcome send(byte[] payload) {
+        return new OpsGenieWebhookSender("http://127.0.0.1:" + opsGenie.getAddress().getPort(),
+                "compression-test", console).send(payload, OpsGenieRetryPolicy.NONE);
+    }
+
+    /**
+     * Returns a JSON payload of about the given size with test names repeating like real ones.
+     */
+    private static byte[] payloadOf(int size) {
+        StringBuilder failedTests = new StringBuilder();
+        for (int i = 0; failedTests.length() < size; i++) {
+            failedTests.append("com.example.ServiceTest.request").append(i).append("\\n");
+        }
+        return ("{\"failedTests\":\"" + failedTests + "\"}").getBytes(UTF_8);
+    }
+}
@@ -0,0 +1,90 @@
+package com.opsgenie.integration.jenkins;
+
+import hudson.model.Run;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PayloadEnricherTest {
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        PayloadEnricher.configure(1, 100);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        PayloadEnricher.configure(PayloadEnricher.DEFAULT_PARALLELISM, PayloadEnricher.DEFAULT_TIME_BUDGET);
+    }
+
+    @Test
+    public void abandonedRunsLeaveTheQueue() {
+        Hanging hanging = new Hanging();
+        List<String> omitted = PayloadEnricher.get().enrich(new HashMap<String, Object>(), null,
+                new AlertProperties(), Collections.<PayloadContributor>nCopies(3, hanging));
+
+        assertEquals(3, omitted.size());
+        assertEquals(0, PayloadEnricher.get().getQueuedRuns(hanging));
+    }
+
+    @Test
+    public void fullQueueSkipsTheContributor() {
+        Hanging hanging = new Hanging();
+        List<PayloadContributor> contributors = new ArrayList<>();
+        // One running and a full queue, after which the contributor is refused
+        contributors.addAll(Collections.nCopies(PayloadEnricher.MAX_QUEUED_RUNS + 2, hanging));
+        contributors.add(new Quick());
+
+        Map<String, Object> payload = new HashMap<>();
+        List<String> omitted = PayloadEnricher.get().enrich(payload, null, new AlertProperties(), contributors);
+
+        assertEquals(PayloadEnricher.MAX_QUEUED_RUNS + 2, omitted.size());
+        assertEquals("quick", payload.get("quick"));
+    }
+
+    @Test
+    public void contributorsWithTheSameNameGetPoolsOfTheirOwn() {
+        Hanging hanging = new Hanging();
+        PayloadEnricher.get().enrich(new HashMap<String, Object>(), null, new AlertProperties(),
+                Collections.<PayloadContributor>singletonList(hanging));
+
+        // Shares the name of the hanging contributor, but not its busy pool thread
+        Map<String, Object> payload = new HashMap<>();
+        List<String> omitted = PayloadEnricher.get().enrich(payload, null, new AlertProperties(),
+                Collections.<PayloadContributor>singletonList(new Quick() {
+                    @Override
+                    public String getName() {
+                        return "Hanging";
+                    }
+                }));
+        assertTrue(omitted.isEmpty());
+        assertEquals("quick", payload.get("quick"));
+    }
+
+    private final class Hanging extends PayloadContributor {
+        @Override
+        public void contribute(Run<?, ?> build, AlertProperties alertProperties, Map<String, Object> fields)
+                throws InterruptedException {
+            release.await();
+        }
+    }
+
+    private static class Quick extends PayloadContributor {
+        @Override
+        public void contribute(Run<?, ?> build, AlertProperties alertProperties, Map<String, Object> fields) {
+            fields.put("quick", "quick");
+        }
+    }
+}
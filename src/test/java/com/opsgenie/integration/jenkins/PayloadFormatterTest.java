@@ -0,0 +1,34 @@
+package com.opsgenie.integration.jenkins;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PayloadFormatterTest {
+
+    @Test
+    public void countsEncodedBytes() {
+        String[] texts = {"ascii", "Gr\u00fc\u00dfe", "\u65e5\u672c\u8a9e\u306e\u30c6\u30b9\u30c8", "emoji \ud83d\ude00"};
+        for (String text : texts) {
+            assertEquals(text, text.getBytes(Charset.forName("UTF-8")).length, PayloadFormatter.utf8Length(text));
+        }
+    }
+
+    @Test
+    public void sectionSizeIsBoundedInBytes() {
+        PayloadLimits limits = new PayloadLimits(100, 1000, 2000);
+        PayloadFormatter.Section section = new PayloadFormatter.Section(limits);
+        for (int i = 0; i < 50; i++) {
+            // Three bytes per character, so a character count would let three times as much in
+            section.add("\u65e5\u672c\u8a9e\n");
+        }
+
+        String formatted = section.toString("changes");
+        String listed = formatted.substring(0, formatted.indexOf('+'));
+        assertTrue(listed.getBytes(Charset.forName("UTF-8")).length <= 100);
+        assertTrue(formatted.endsWith(" more changes\n"));
+    }
+}
@@ -0,0 +1,95 @@
+package com.opsgenie.integration.jenkins.matrix;
+
+import com.opsgenie.integration.jenkins.OpsGenieNotifier;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import hudson.matrix.AxisList;
+import hudson.matrix.MatrixBuild;
+import hudson.matrix.MatrixProject;
+import hudson.matrix.TextAxis;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class MatrixNotifierListenerTest {
+    private static final byte[] SUCCESS = "{\"result\":\"success\"}".getBytes(Charset.forName("UTF-8"));
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private final AtomicInteger alerts = new AtomicInteger();
+    private HttpServer opsGenie;
+
+    @Before
+    public void startOpsGenie() throws IOException {
+        opsGenie = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        opsGenie.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    InputStream body = exchange.getRequestBody();
+                    while (body.read() != -1) {
+                        // Drains the alert
+                    }
+                    if ("POST".equals(exchange.getRequestMethod())) {
+                        alerts.incrementAndGet();
+                    }
+                    exchange.getResponseHeaders().set("Content-Type", "application/json");
+                    exchange.sendResponseHeaders(200, SUCCESS.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(SUCCESS);
+                    out.close();
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        opsGenie.start();
+    }
+
+    @After
+    public void stopOpsGenie() {
+        opsGenie.stop(0);
+    }
+
+    @Test
+    public void aggregatedMatrixBuildSendsOneAlert() throws Exception {
+        MatrixProject project = j.createProject(MatrixProject.class);
+        project.setAxes(new AxisList(new TextAxis("os", "linux", "windows"), new TextAxis("jdk", "8", "11")));
+        OpsGenieNotifier notifier = new OpsGenieNotifier(true, false, null, "matrix-test",
+                "http://127.0.0.1:" + opsGenie.getAddress().getPort(), "ops", "P3", "P3");
+        notifier.setAggregateMatrix(true);
+        project.getPublishersList().add(notifier);
+
+        MatrixBuild build = j.buildAndAssertSuccess(project);
+        assertEquals(4, build.getExactRuns().size());
+
+        awaitAlerts(1);
+        // Leaves time for alerts of the cells, which must not come
+        Thread.sleep(1000);
+        assertEquals(1, alerts.get());
+    }
+
+    private void awaitAlerts(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (alerts.get() < count) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Expected " + count + " alerts but were " + alerts.get());
+            }
+            Thread.sleep(50);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.opsgenie.integration.jenkins.routing;
+
+import hudson.model.Result;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RoutingIndexTest {
+    private static final Set<String> NO_LABELS = Collections.emptySet();
+
+    @Test
+    public void literalPrefixStopsAtSpecialCharacters() {
+        assertEquals("team-a/", RoutingIndex.literalPrefix("team-a/.*"));
+        assertEquals("team-a/servic", RoutingIndex.literalPrefix("team-a/service?"));
+        assertEquals("team-a/service", RoutingIndex.literalPrefix("team-a/service+"));
+        assertEquals("deploy-", RoutingIndex.literalPrefix("deploy-[0-9]+"));
+        assertEquals("", RoutingIndex.literalPrefix(".*-nightly"));
+        assertEquals("", RoutingIndex.literalPrefix("(?i)team-a/.*"));
+        assertEquals("", RoutingIndex.literalPrefix("team-a/.*|team-b/.*"));
+    }
+
+    @Test
+    public void pathMatchesTheItemAndEverythingInside() {
+        RoutingRule service = rule("team-a/service", null, null, null);
+        RoutingIndex index = RoutingIndex.compile(Collections.singletonList(service));
+
+        assertSame(service, index.match("team-a/service", Result.FAILURE, NO_LABELS));
+        assertSame(service, index.match("team-a/service/build", Result.FAILURE, NO_LABELS));
+        assertNull(index.match("team-a", Result.FAILURE, NO_LABELS));
+        assertNull(index.match("team-a/service-ui/build", Result.FAILURE, NO_LABELS));
+        assertNull(index.match("team-b/service/build", Result.FAILURE, NO_LABELS));
+    }
+
+    @Test
+    public void firstRuleInConfigurationOrderWins() {
+        RoutingRule nested = rule("team-a/service", null, null, null);
+        RoutingRule byPattern = rule(null, "team-a/.*", null, null);
+        RoutingRule folder = rule("team-a", null, null, null);
+        RoutingRule catchAll = rule(null, null, null, null);
+        RoutingIndex index = RoutingIndex.compile(Arrays.asList(nested, byPattern, folder, catchAll));
+
+        // Deeper in the trie, but configured first
+        assertSame(nested, index.match("team-a/service/build", Result.FAILURE, NO_LABELS));
+        // Configured before the folder rule, which is deeper in the trie
+        assertSame(byPattern, index.match("team-a/other", Result.FAILURE, NO_LABELS));
+        assertSame(catchAll, index.match("team-b/other", Result.FAILURE, NO_LABELS));
+    }
+
+    @Test
+    public void resultsAndLabelsNarrowARule() {
+        RoutingRule failures = rule(null, null, "FAILURE, UNSTABLE", null);
+        RoutingRule onDocker = rule(null, null, null, "docker");
+        RoutingIndex index = RoutingIndex.compile(Arrays.asList(failures, onDocker));
+
+        assertSame(failures, index.match("job", Result.FAILURE, NO_LABELS));
+        assertSame(failures, index.match("job", Result.UNSTABLE, NO_LABELS));
+        assertNull(index.match("job", Result.SUCCESS, NO_LABELS));
+        assertNull(index.match("job", Result.ABORTED, NO_LABELS));
+        assertSame(onDocker, index.match("job", Result.SUCCESS, Collections.singleton("docker")));
+    }
+
+    @Test
+    public void patternsAreOnlyTriedForMatchingPrefixes() {
+        List<RoutingRule> rules = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            rules.add(rule(null, "service-" + i + "/.*", null, null));
+        }
+        RoutingRule nightly = rule(null, ".*-nightly", null, null);
+        RoutingRule catchAll = rule(null, null, null, null);
+        rules.add(nightly);
+        rules.add(catchAll);
+        RoutingIndex index = RoutingIndex.compile(rules);
+
+        assertEquals(5002, index.size());
+        assertSame(rules.get(4321), index.match("service-4321/deploy", Result.FAILURE, NO_LABELS));
+        assertSame(rules.get(7), index.match("service-7/deploy", Result.FAILURE, NO_LABELS));
+        assertSame(nightly, index.match("service-7-nightly", Result.FAILURE, NO_LABELS));
+        assertSame(catchAll, index.match("service-5000/deploy", Result.FAILURE, NO_LABELS));
+        assertSame(catchAll, index.match("other", Result.FAILURE, NO_LABELS));
+    }
+
+    @Test
+    public void invalidPatternsAreSkipped() {
+        RoutingRule invalid = rule(null, "team-a/[", null, null);
+        RoutingRule valid = rule(null, "team-a/.*", null, null);
+        RoutingIndex index = RoutingIndex.compile(Arrays.asList(invalid, valid));
+
+        assertEquals(1, index.size());
+        assertSame(valid, index.match("team-a/job", Result.FAILURE, NO_LABELS));
+    }
+
+    private static RoutingRule rule(String path, String jobPattern, String results, String label) {
+        return new RoutingRule(path, jobPattern, results, label, "ops", null, "P3", null);
+    }
+}